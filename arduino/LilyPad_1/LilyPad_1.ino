@@ -19,6 +19,25 @@ const int XBEE_TX = 3;
 SoftwareSerial XBee(XBEE_RX, XBEE_TX);
 Stream& LINK = XBee;
 
+// --- CHECKSUM ---
+// 0 = sum of the three bytes (default), 1 = CRC-8 (poly 0x07).
+// Must match the PC side: run it with -Dchecksum=crc8 when this is 1.
+#define LINK_CRC8 0
+
+byte check3(byte a, byte b, byte c){
+#if LINK_CRC8
+  byte data[3] = {a, b, c};
+  byte crc = 0;
+  for(int i=0; i<3; i++){
+    crc ^= data[i];
+    for(int bit=0; bit<8; bit++) crc = (crc & 0x80) ? (byte)((crc << 1) ^ 0x07) : (byte)(crc << 1);
+  }
+  return crc;
+#else
+  return (byte)((a + b + c) & 0xFF);
+#endif
+}
+
 // --- FLAGS ---
 const byte FLAG_IR    = 1;
 const byte FLAG_LDR   = 2;
@@ -91,7 +110,7 @@ void fireBurst(){
 bool ldrBright(){ return digitalRead(PIN_LDR)==LOW; }
 
 void sendStatus(byte flags, byte value){
-  byte s = (byte)((TEAM_ID + flags + value) & 0xFF);
+  byte s = check3(TEAM_ID, flags, value);
   LINK.write(TEAM_ID); LINK.write(flags); LINK.write(value); LINK.write(s);
 }
 
@@ -101,7 +120,7 @@ void handleCommand(){
     byte cmd  = LINK.read();
     byte arg  = LINK.read();
     byte sum  = LINK.read();
-    if((byte)((team+cmd+arg)&0xFF) != sum) continue;
+    if(check3(team, cmd, arg) != sum) continue;
     if(team != TEAM_ID && team != 0xFF) continue;
 
     if(cmd==CMD_SET_RGB) rgbCode(arg);
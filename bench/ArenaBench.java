@@ -0,0 +1,271 @@
+/**
+ * Micro benchmarks for the hot paths: checksum, parsing, bus fan-out,
+ * command encoding, command routing and the game engine.
+ * The serial link is replaced by a NullTransport.
+ *
+ * Run with: mvn -Pbench verify   (or: java ArenaBench [name filter])
+ */
+public class ArenaBench {
+    // Number of prepared frames the benchmarks cycle through
+    private static final int FRAMES = 1024;
+    private static final int MASK = FRAMES - 1;
+
+    public static void main(String[] args) {
+        Bench b = new Bench(args.length > 0 ? args[0] : "");
+        ChecksumStrategy sum = new SumModuloChecksum();
+
+        checksum(b, sum, "sumModulo");
+        checksum(b, new Crc8Checksum(), "crc8");
+        parser(b, sum);
+        bus(b);
+        commands(b);
+        dispatcher(b);
+        engine(b);
+    }
+
+    // --- CHECKSUM ---
+
+    private static void checksum(Bench b, ChecksumStrategy sum, String name) {
+        int[] frames = heartbeatFrames(sum, 16);
+        // Every 8th frame gets a broken checksum, so the batch has something to drop
+        for (int i = 0; i < FRAMES; i += 8) frames[i] ^= 0x01;
+        b.run("Checksum." + name + ".valid", ops -> {
+            long ok = 0;
+            for (long i = 0; i < ops; i++) {
+                int f = frames[(int) i & MASK];
+                if (sum.valid((byte) (f >>> 24), (byte) (f >>> 16), (byte) (f >>> 8), (byte) f)) ok++;
+            }
+            return ok;
+        });
+        // Same frames, copied in and checked 64 at a time like a drained ring (one op = one frame)
+        int[] work = new int[FRAMES];
+        b.run("Checksum." + name + ".filterValid x64", ops -> {
+            long ok = 0;
+            for (long i = 0; i < ops; i += 64) {
+                int off = (int) i & MASK;
+                System.arraycopy(frames, off, work, off, 64);
+                ok += sum.filterValid(work, off, 64);
+            }
+            return ok;
+        });
+    }
+
+    // --- PARSER ---
+
+    private static void parser(Bench b, ChecksumStrategy sum) {
+        PacketParser parser = new PacketParser(sum);
+        int[] frames = heartbeatFrames(sum, 16);
+        byte[][] raw = new byte[FRAMES][];
+        for (int i = 0; i < FRAMES; i++) raw[i] = unpack(frames[i]);
+
+        b.run("PacketParser.parse(byte[])", ops -> {
+            long acc = 0;
+            for (long i = 0; i < ops; i++) {
+                acc += parser.parse(raw[(int) i & MASK]).map(Packet::team).orElse(0);
+            }
+            return acc;
+        });
+        b.run("PacketParser.parseFrame(int)", ops -> {
+            long acc = 0;
+            for (long i = 0; i < ops; i++) acc += parser.parseFrame(frames[(int) i & MASK]);
+            return acc;
+        });
+    }
+
+    // --- BUS ---
+
+    /**
+     * A listener that only counts, so we measure the bus and not the listener.
+     */
+    private static final class CountingListener implements PacketListener {
+        long n;
+        @Override public void onPacket(Packet p) { n += p.flags(); }
+        @Override public void onPacket(int team, int flags, int value) { n += flags; }
+    }
+
+    private static void bus(Bench b) {
+        for (int listeners : new int[]{ 1, 4, 16 }) {
+            PacketBus bus = new PacketBus();
+            CountingListener[] ls = new CountingListener[listeners];
+            for (int i = 0; i < listeners; i++) bus.add(ls[i] = new CountingListener());
+            Packet p = new Packet(1, Packet.FLAG_HB | Packet.FLAG_LIGHT, 1);
+
+            b.run("PacketBus.publish(int) listeners=" + listeners, ops -> {
+                for (long i = 0; i < ops; i++) bus.publish((int) i & 0x0F, (int) i & 0x0F, 1);
+                return ls[0].n;
+            });
+            b.run("PacketBus.publish(Packet) listeners=" + listeners, ops -> {
+                for (long i = 0; i < ops; i++) bus.publish(p);
+                return ls[0].n;
+            });
+            // The same packets as the first benchmark, 64 per call (one op = one packet)
+            PacketBatch batch = new PacketBatch(64);
+            for (int i = 0; i < 64; i++) batch.add(i & 0x0F, i & 0x0F, 1, 0, 0L);
+            b.run("PacketBus.publish(batch x64) listeners=" + listeners, ops -> {
+                for (long i = 0; i < ops; i += 64) bus.publish(batch);
+                return ls[0].n;
+            });
+        }
+    }
+
+    // --- COMMAND ENCODING ---
+
+    private static void commands(Bench b) {
+        b.run("Commands.setRgb.toBytes", ops -> {
+            long acc = 0;
+            for (long i = 0; i < ops; i++) acc += Commands.setRgb(1 + ((int) i & 1), (int) i & 3).toBytes()[3];
+            return acc;
+        });
+        b.run("Commands.beep.toBytes", ops -> {
+            long acc = 0;
+            for (long i = 0; i < ops; i++) acc += Commands.beep(1 + ((int) i & 1), 1).toBytes()[3];
+            return acc;
+        });
+        b.run("Commands.fireMode.toBytes", ops -> {
+            long acc = 0;
+            for (long i = 0; i < ops; i++) acc += Commands.fireMode(Commands.TEAM_ALL, (int) i & 2).toBytes()[3];
+            return acc;
+        });
+    }
+
+    // --- COMMAND ROUTING ---
+
+    private static void dispatcher(Bench b) {
+        for (int ports : new int[]{ 1, 2, 4 }) {
+            NullTransport[] links = new NullTransport[ports];
+            SerialEndpoint[] endpoints = new SerialEndpoint[ports];
+            for (int i = 0; i < ports; i++) {
+                links[i] = new NullTransport();
+                links[i].open();
+                endpoints[i] = new SerialEndpoint(links[i]);
+            }
+            CommandDispatcherMulti tx = new CommandDispatcherMulti(endpoints);
+            // Team 1, Team 2 and a broadcast, in the ratio the engine sends them
+            Command[] mix = {
+                Commands.setRgb(1, 2), Commands.setRgb(2, 1), Commands.beep(1, 1),
+                Commands.setRgb(Commands.TEAM_ALL, 0)
+            };
+
+            b.run("CommandDispatcherMulti.send ports=" + ports, ops -> {
+                for (long i = 0; i < ops; i++) tx.send(mix[(int) i & 3]);
+                return links[0].bytesWritten();
+            });
+        }
+    }
+
+    // --- ENGINE ---
+
+    private static void engine(Bench b) {
+        for (int teams : new int[]{ 2, 16 }) {
+            GameEngine hbEngine = runningEngine(teams);
+            b.run("GameEngine.onPacket heartbeats teams=" + teams, ops -> {
+                for (long i = 0; i < ops; i++) {
+                    hbEngine.onPacket(1 + (int) (i % teams), Packet.FLAG_HB | Packet.FLAG_LIGHT, 1);
+                }
+                return ops;
+            });
+            Match batchMatch = new Match(teams);
+            PacketBatch batch = new PacketBatch(64);
+            for (int i = 0; i < 64; i++) {
+                batch.add(1 + i % teams, Packet.FLAG_HB | Packet.FLAG_LIGHT | (i % 10 == 0 ? Packet.FLAG_IR : 0), 1, 0, 0L);
+            }
+            b.run("GameEngine.onPackets(x64) 10% hits teams=" + teams, ops -> {
+                for (long i = 0; i < ops; i += 64) {
+                    batchMatch.nextHit();
+                    batchMatch.engine.onPackets(batch);
+                }
+                return ops + batchMatch.matches;
+            });
+            Match hitMatch = new Match(teams);
+            b.run("GameEngine.onPacket 10% hits teams=" + teams, ops -> {
+                for (long i = 0; i < ops; i++) {
+                    int flags = Packet.FLAG_HB | Packet.FLAG_LIGHT;
+                    if (i % 10 == 0) {
+                        flags |= Packet.FLAG_IR;
+                        hitMatch.nextHit();
+                    }
+                    hitMatch.engine.onPacket(1 + (int) (i % teams), flags, 1);
+                }
+                return ops + hitMatch.matches;
+            });
+        }
+    }
+
+    /**
+     * An engine on a ManualClock, so the hit benchmarks measure real hits:
+     * on the wall clock the 1 s invincibility rejects almost every hit, and
+     * after a few seconds every team is dead and only the "not running" path
+     * is left. Here the clock jumps past the invincibility before every hit,
+     * and a finished match is started again right away.
+     */
+    private static final class Match {
+        // Longer than GameEngine's invincibility (1 s) and restart cooldown (5 s)
+        private static final long HIT_GAP_MS = 1001;
+        private static final long COOLDOWN_MS = 5001;
+
+        final ManualClock clock = new ManualClock(0);
+        final GameEngine engine;
+        final int teams;
+        // Matches played so far
+        long matches = 0;
+
+        Match(int teams) {
+            NullTransport link = new NullTransport();
+            link.open();
+            this.teams = teams;
+            this.engine = new GameEngine(new CommandDispatcher(new SerialEndpoint(link)), teams, new Timeline(clock));
+            start();
+        }
+
+        // Moves the clock so the next hit counts, and starts a new match if the last one ended
+        void nextHit() {
+            clock.advanceMillis(HIT_GAP_MS);
+            if (!engine.isRunning()) {
+                clock.advanceMillis(COOLDOWN_MS);
+                start();
+            }
+        }
+
+        // The cover/uncover start sequence
+        private void start() {
+            for (int t = 1; t <= teams; t++) engine.onPacket(t, Packet.FLAG_HB, 1);
+            for (int t = 1; t <= teams; t++) engine.onPacket(t, Packet.FLAG_HB | Packet.FLAG_LIGHT, 1);
+            matches++;
+        }
+    }
+
+    /**
+     * Builds an engine on a NullTransport and walks it through the
+     * cover/uncover start sequence, so it is in a running match.
+     */
+    private static GameEngine runningEngine(int teams) {
+        NullTransport link = new NullTransport();
+        link.open();
+        GameEngine engine = new GameEngine(new CommandDispatcher(new SerialEndpoint(link)), teams);
+        for (int t = 1; t <= teams; t++) engine.onPacket(t, Packet.FLAG_HB, 1);
+        for (int t = 1; t <= teams; t++) engine.onPacket(t, Packet.FLAG_HB | Packet.FLAG_LIGHT, 1);
+        return engine;
+    }
+
+    // --- HELPERS ---
+
+    /**
+     * Builds valid packed frames for teams 1..teams, mostly heartbeats.
+     */
+    private static int[] heartbeatFrames(ChecksumStrategy sum, int teams) {
+        int[] frames = new int[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            byte team = (byte) (1 + i % teams);
+            byte flags = (byte) (Packet.FLAG_HB | ((i & 1) == 0 ? Packet.FLAG_LIGHT : 0)
+                    | (i % 20 == 0 ? Packet.FLAG_IR : 0));
+            byte value = 1;
+            byte s = sum.compute(team, flags, value);
+            frames[i] = (team & 0xFF) << 24 | (flags & 0xFF) << 16 | (value & 0xFF) << 8 | (s & 0xFF);
+        }
+        return frames;
+    }
+
+    private static byte[] unpack(int f) {
+        return new byte[]{ (byte) (f >>> 24), (byte) (f >>> 16), (byte) (f >>> 8), (byte) f };
+    }
+}
@@ -0,0 +1,94 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+/**
+ * A tiny micro-benchmark harness in the style of JMH.
+ * Every benchmark runs a few warmup rounds, then a few measured rounds, and
+ * reports throughput (ops/us) and how many bytes it allocated per operation.
+ *
+ * JMH itself refuses benchmark classes in the default package, which is where
+ * all of our classes live, so this harness does the same job by hand.
+ */
+public final class Bench {
+    /**
+     * One benchmark body. It must run the operation 'ops' times and return
+     * something computed from the results, so the JIT cannot remove the work.
+     */
+    public interface Body {
+        long run(long ops);
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURE_ROUNDS = 5;
+    private static final long ROUND_NANOS = 500_000_000L;
+
+    // Results end up here so the JIT sees them as used
+    private static volatile long sink;
+
+    private final String filter;
+
+    public Bench(String filter) {
+        this.filter = (filter == null) ? "" : filter;
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        System.out.printf("%-44s %5s %12s %10s %12s%n",
+                "Benchmark", "Cnt", "Score", "Error", "Alloc");
+    }
+
+    /**
+     * Runs one benchmark and prints a result line.
+     * @param name Benchmark name (filtered by the command line argument).
+     */
+    public void run(String name, Body body) {
+        if (!name.contains(filter)) return;
+
+        // Find a batch size that takes about 10ms, so the timer calls do not matter
+        long ops = 1;
+        while (true) {
+            long t0 = System.nanoTime();
+            sink += body.run(ops);
+            if (System.nanoTime() - t0 > 10_000_000L || ops > (1L << 40)) break;
+            ops *= 2;
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) round(body, ops);
+
+        double[] score = new double[MEASURE_ROUNDS];
+        double bytesPerOp = 0;
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            long[] r = round(body, ops);
+            score[i] = r[0] / (r[1] / 1000.0);
+            bytesPerOp += r[2] / (double) r[0];
+        }
+        bytesPerOp /= MEASURE_ROUNDS;
+
+        double mean = Arrays.stream(score).average().orElse(0);
+        double var = 0;
+        for (double s : score) var += (s - mean) * (s - mean);
+        double err = MEASURE_ROUNDS > 1 ? Math.sqrt(var / (MEASURE_ROUNDS - 1)) : 0;
+
+        System.out.printf("%-44s %5d %12.3f %10.3f %12.1f  ops/us, B/op%n",
+                name, MEASURE_ROUNDS, mean, err, bytesPerOp);
+    }
+
+    /**
+     * Runs batches for about ROUND_NANOS.
+     * @return {operations, nanoseconds, bytes allocated}
+     */
+    private static long[] round(Body body, long batch) {
+        long tid = Thread.currentThread().getId();
+        long ops = 0;
+        long a0 = THREADS.getThreadAllocatedBytes(tid);
+        long t0 = System.nanoTime();
+        long t;
+        do {
+            sink += body.run(batch);
+            ops += batch;
+            t = System.nanoTime();
+        } while (t - t0 < ROUND_NANOS);
+        long bytes = THREADS.getThreadAllocatedBytes(tid) - a0;
+        return new long[]{ ops, t - t0, bytes };
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * A SerialTransport that throws away everything written to it and never
+ * has anything to read. Used to benchmark the send path without hardware.
+ */
+public class NullTransport implements SerialTransport {
+    private long bytesWritten = 0;
+    private boolean open = false;
+
+    @Override
+    public void open() { open = true; }
+
+    @Override
+    public int read(byte[] buf, int len) { return 0; }
+
+    @Override
+    public void write(byte[] buf) { bytesWritten += buf.length; }
+
+    @Override
+    public boolean isOpen() { return open; }
+
+    @Override
+    public void close() { open = false; }
+
+    public long bytesWritten() { return bytesWritten; }
+}
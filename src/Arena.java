@@ -0,0 +1,135 @@
+/**
+ * One independent match: its own PacketBus, Game Engine and thread.
+ * The arena owns a range of real team IDs (firstTeam .. firstTeam+teams-1).
+ * Inside the arena the teams are numbered 1..teams, so the engine and the
+ * scoreboard work exactly as in a single-arena setup.
+ * An arena can be bound to one dongle (port); then it only gets packets from
+ * that dongle, and another arena on another dongle may use the same team IDs.
+ */
+public class Arena implements AutoCloseable {
+    // Packets that may wait for the arena thread. When it is full the Decoder waits,
+    // so a hit is never lost (a match only falls that far behind if its engine hangs).
+    private static final int INBOX_CAPACITY = 4096;
+    // Port value for an arena that takes packets from every dongle
+    public static final int ANY_PORT = -1;
+
+    private final String name;
+    private final int firstTeam;
+    private final int teams;
+    private final int port;
+    private final PacketBus bus = new PacketBus();
+    private final GameEngine engine;
+    // Bounded hand-off to the arena's own thread
+    private final AsyncPacketListener inbox;
+
+    /**
+     * An arena that takes packets from every dongle.
+     * @param name Name used for the thread and the scoreboard title.
+     * @param firstTeam The real team ID of the arena's team 1.
+     * @param teams Number of teams in the arena.
+     * @param out The shared dispatcher that really sends to the port(s).
+     */
+    public Arena(String name, int firstTeam, int teams, CommandDispatcher out) {
+        this(name, firstTeam, teams, out, ANY_PORT);
+    }
+
+    /**
+     * @param port The only dongle this arena listens to, or ANY_PORT.
+     *             'out' should then send to that dongle only (see CommandDispatcherMulti.forPort()).
+     */
+    public Arena(String name, int firstTeam, int teams, CommandDispatcher out, int port) {
+        if (firstTeam < 1 || teams < 1 || firstTeam + teams - 1 > 254) {
+            throw new IllegalArgumentException("team range must be within 1..254");
+        }
+        if (port < ANY_PORT || port > 255) {
+            throw new IllegalArgumentException("port must be between 0 and 255 (or ANY_PORT)");
+        }
+        this.name = name;
+        this.firstTeam = firstTeam;
+        this.teams = teams;
+        this.port = port;
+        this.engine = new GameEngine(new ArenaCommandDispatcher(out, firstTeam, teams), teams);
+        bus.add(engine);
+        this.inbox = new AsyncPacketListener(new Translator(), INBOX_CAPACITY,
+                AsyncPacketListener.Overflow.BLOCK, "Arena-" + name);
+    }
+
+    /**
+     * Hands a packet to this arena. It is processed later on the arena's own thread.
+     * @param team The REAL team ID (it is translated to the arena's numbering there).
+     */
+    public void submit(int team, int flags, int value) {
+        submit(team, flags, value, 0, 0L);
+    }
+
+    /**
+     * Same as above, keeping the source port and receive time of the frame.
+     */
+    public void submit(int team, int flags, int value, int port, long rxNanos) {
+        inbox.onPacket(team, flags, value, port, rxNanos);
+    }
+
+    /**
+     * Hands over this arena's part of a batch (REAL team IDs) with one lock.
+     * The packets are copied, so the caller may reuse the batch.
+     */
+    public void submit(PacketBatch part) {
+        inbox.onPackets(part);
+    }
+
+    /**
+     * Runs on the arena thread: translates the real team IDs to the arena's
+     * numbering and publishes the packets on the arena's bus.
+     */
+    private final class Translator implements PacketListener {
+        private final PacketBatch local = new PacketBatch(AsyncPacketListener.MAX_DELIVER);
+
+        @Override
+        public void onPacket(Packet p) {
+            onPacket(p.team(), p.flags(), p.value(), 0, 0L);
+        }
+
+        @Override
+        public void onPacket(int team, int flags, int value, int port, long rxNanos) {
+            if (owns(team)) bus.publish(team - firstTeam + 1, flags, value, port, rxNanos);
+        }
+
+        @Override
+        public void onPackets(PacketBatch batch) {
+            local.clear();
+            for (int i = 0; i < batch.size(); i++) {
+                int team = batch.team(i);
+                if (owns(team)) {
+                    local.add(team - firstTeam + 1, batch.flags(i), batch.value(i), batch.port(i), batch.rxNanos(i));
+                }
+            }
+            if (!local.isEmpty()) bus.publish(local);
+        }
+    }
+
+    // Checks if a real team ID belongs to this arena
+    public boolean owns(int team) { return team >= firstTeam && team < firstTeam + teams; }
+
+    public String name() { return name; }
+    public int firstTeam() { return firstTeam; }
+    public int teams() { return teams; }
+    // The dongle this arena listens to (ANY_PORT = all of them)
+    public int port() { return port; }
+    public GameEngine engine() { return engine; }
+    // Extra listeners (like a debug logger) can be added to the arena's bus
+    public PacketBus bus() { return bus; }
+    // Packets waiting for the arena thread
+    public int pending() { return inbox.pending(); }
+
+    /**
+     * Stops the arena's thread. Packets still waiting are dropped.
+     */
+    @Override
+    public void close() { inbox.close(); }
+
+    @Override
+    public String toString() {
+        return "Arena(" + name + ", teams " + firstTeam + "-" + (firstTeam + teams - 1) +
+                (port != ANY_PORT ? " on port " + port : "") + ")";
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * The CommandDispatcher an Arena gives to its Game Engine.
+ * The engine thinks its teams are 1..N, but on the radio they are a range of
+ * real team IDs (for example 5..8). This class translates the team ID on the
+ * way out. A broadcast (TEAM_ALL) is turned into one command per team in the
+ * range, so it can never reach cars that belong to another arena.
+ */
+public class ArenaCommandDispatcher extends CommandDispatcher {
+    private final CommandDispatcher out;
+    private final int firstTeam;
+    private final int teams;
+
+    /**
+     * @param out The shared dispatcher that really sends to the port(s).
+     * @param firstTeam The real team ID of the arena's team 1.
+     * @param teams Number of teams in the arena.
+     */
+    public ArenaCommandDispatcher(CommandDispatcher out, int firstTeam, int teams) {
+        super(null);
+        if (out == null) {
+            throw new IllegalArgumentException("out must not be null");
+        }
+        this.out = out;
+        this.firstTeam = firstTeam;
+        this.teams = teams;
+    }
+
+    @Override
+    public void send(Command c) {
+        byte[] f = c.toBytes();
+        int team = f[0] & 0xFF;
+        int cmd = f[1];
+        int arg = f[2] & 0xFF;
+
+        if (team == (Commands.TEAM_ALL & 0xFF)) {
+            for (int t = 0; t < teams; t++) out.send(Commands.frame(firstTeam + t, cmd, arg));
+        } else if (team >= 1 && team <= teams) {
+            out.send(Commands.frame(firstTeam + team - 1, cmd, arg));
+        }
+    }
+}
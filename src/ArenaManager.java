@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hosts several independent arenas in one program.
+ * It listens on the main PacketBus and sends every packet to the arena that
+ * owns the team ID (a lookup table, so routing costs the same for any number
+ * of arenas). A batch is split in one pass, and every arena gets its part
+ * with one hand-off. Each arena runs its engine on its own thread, so one
+ * busy match does not slow down the others.
+ * Arenas bound to a dongle are looked up by (port, team) first, so arenas on
+ * different dongles can use the same team IDs.
+ */
+public class ArenaManager implements PacketListener, AutoCloseable {
+    private static final int NONE = -1;
+
+    /**
+     * The routing tables. Replaced as a whole when an arena is added, so the
+     * packet path needs no lock.
+     */
+    private static final class Routes {
+        final Arena[] arenas;
+        // Arena index per real team ID, for arenas that take every port
+        final int[] byTeam;
+        // Arena index per port and team ID, for arenas bound to a port (null = none on that port)
+        final int[][] byPort;
+
+        Routes(Arena[] arenas, int[] byTeam, int[][] byPort) {
+            this.arenas = arenas;
+            this.byTeam = byTeam;
+            this.byPort = byPort;
+        }
+
+        // Index of the arena for a packet, or NONE
+        int slot(int team, int port) {
+            if (port < byPort.length && byPort[port] != null) {
+                int s = byPort[port][team];
+                if (s != NONE) return s;
+            }
+            return byTeam[team];
+        }
+    }
+
+    private volatile Routes routes = new Routes(new Arena[0], empty(), new int[0][]);
+
+    // --- BATCH SPLITTING (guarded by 'this') ---
+    // One part per arena, reused for every batch
+    private PacketBatch[] parts = new PacketBatch[0];
+    // The arenas that got packets in the current batch
+    private int[] touched = new int[0];
+
+    // Packets from teams that no arena owns
+    private volatile long unrouted = 0;
+
+    private static int[] empty() {
+        int[] t = new int[256];
+        Arrays.fill(t, NONE);
+        return t;
+    }
+
+    /**
+     * Adds an arena. Its team range must not overlap another arena on the
+     * same port (an arena on ANY_PORT overlaps every port).
+     */
+    public synchronized void add(Arena a) {
+        Routes r = routes;
+        int port = a.port();
+        for (int t = a.firstTeam(); t < a.firstTeam() + a.teams(); t++) {
+            int other = r.byTeam[t];
+            if (other == NONE && port != Arena.ANY_PORT) {
+                other = (port < r.byPort.length && r.byPort[port] != null) ? r.byPort[port][t] : NONE;
+            }
+            for (int p = 0; other == NONE && port == Arena.ANY_PORT && p < r.byPort.length; p++) {
+                if (r.byPort[p] != null) other = r.byPort[p][t];
+            }
+            if (other != NONE) {
+                throw new IllegalArgumentException("Team " + t + " already belongs to " + r.arenas[other]);
+            }
+        }
+
+        int slot = r.arenas.length;
+        Arena[] arenas = Arrays.copyOf(r.arenas, slot + 1);
+        arenas[slot] = a;
+        int[] byTeam = r.byTeam;
+        int[][] byPort = r.byPort;
+        if (port == Arena.ANY_PORT) {
+            byTeam = byTeam.clone();
+            for (int t = a.firstTeam(); t < a.firstTeam() + a.teams(); t++) byTeam[t] = slot;
+        } else {
+            byPort = Arrays.copyOf(byPort, Math.max(byPort.length, port + 1));
+            int[] table = (byPort[port] != null) ? byPort[port].clone() : empty();
+            for (int t = a.firstTeam(); t < a.firstTeam() + a.teams(); t++) table[t] = slot;
+            byPort[port] = table;
+        }
+
+        parts = Arrays.copyOf(parts, slot + 1);
+        parts[slot] = new PacketBatch(PacketDecoder.MAX_BATCH);
+        touched = new int[slot + 1];
+        routes = new Routes(arenas, byTeam, byPort);
+    }
+
+    public List<Arena> arenas() { return Collections.unmodifiableList(Arrays.asList(routes.arenas.clone())); }
+
+    @Override
+    public void onPacket(Packet p) {
+        onPacket(p.team(), p.flags(), p.value());
+    }
+
+    /**
+     * Routes a packet to the arena that owns its team.
+     */
+    @Override
+    public void onPacket(int team, int flags, int value) {
+        onPacket(team, flags, value, 0, 0L);
+    }
+
+    // Same, keeping the source port and receive time
+    @Override
+    public void onPacket(int team, int flags, int value, int port, long rxNanos) {
+        Routes r = routes;
+        int s = r.slot(team & 0xFF, port);
+        if (s == NONE) {
+            unrouted++;
+            return;
+        }
+        r.arenas[s].submit(team, flags, value, port, rxNanos);
+    }
+
+    /**
+     * Routes a batch: one pass splits it by arena, then every arena that got
+     * packets gets its part with one hand-off.
+     */
+    @Override
+    public synchronized void onPackets(PacketBatch batch) {
+        Routes r = routes;
+        int n = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            int s = r.slot(batch.team(i), batch.port(i));
+            if (s == NONE) {
+                unrouted++;
+                continue;
+            }
+            PacketBatch part = parts[s];
+            if (part.isEmpty()) touched[n++] = s;
+            if (!part.add(batch.team(i), batch.flags(i), batch.value(i), batch.port(i), batch.rxNanos(i))) {
+                // Bigger than a Decoder batch: hand over what we have and start again
+                r.arenas[s].submit(part);
+                part.clear();
+                part.add(batch.team(i), batch.flags(i), batch.value(i), batch.port(i), batch.rxNanos(i));
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            int s = touched[k];
+            r.arenas[s].submit(parts[s]);
+            parts[s].clear();
+        }
+    }
+
+    // Number of packets that did not belong to any arena
+    public long unrouted() { return unrouted; }
+
+    /**
+     * Reads arena team ranges like "1-2,3-4" (two duels) or "1-8" (one 8-car match).
+     * A single number like "5" is an arena with one team. "1-2@0,1-2@1" binds
+     * each range to a dongle (port index), so two arenas can both use teams 1-2.
+     * @return A list of {firstTeam, teams, port} triples (port = Arena.ANY_PORT if not given).
+     */
+    public static List<int[]> parseRanges(String spec) {
+        List<int[]> out = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String r = part.trim();
+            if (r.isEmpty()) continue;
+            int port = Arena.ANY_PORT;
+            int at = r.indexOf('@');
+            if (at >= 0) {
+                port = Integer.parseInt(r.substring(at + 1).trim());
+                r = r.substring(0, at).trim();
+            }
+            int dash = r.indexOf('-');
+            int from = Integer.parseInt(dash < 0 ? r : r.substring(0, dash).trim());
+            int to = (dash < 0) ? from : Integer.parseInt(r.substring(dash + 1).trim());
+            if (to < from || port < Arena.ANY_PORT) {
+                throw new IllegalArgumentException("Bad team range: " + part.trim());
+            }
+            out.add(new int[]{ from, to - from + 1, port });
+        }
+        return out;
+    }
+
+    /**
+     * Stops all arena threads.
+     */
+    @Override
+    public synchronized void close() {
+        for (Arena a : routes.arenas) a.close();
+    }
+}
@@ -0,0 +1,201 @@
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A console log that never makes the caller wait for the console.
+ * System.out.println() locks the stream and flushes on every line, which is
+ * slow enough to hold up the packet path. Here a log call only puts the
+ * message into a queue; a background thread builds the text (so a Supplier
+ * is only run if the line is really written) and writes it out in batches.
+ * If the queue is full, new lines are dropped and counted instead of waiting.
+ * For per-packet output, use a Limiter to cap how many lines get logged.
+ */
+public final class AsyncLog {
+    // How many lines may wait for the writer thread
+    private static final int CAPACITY = 8192;
+    // Most lines written per flush
+    private static final int MAX_BATCH = 256;
+
+    // One line waiting to be written
+    private static final class Entry {
+        final boolean error;
+        final Object msg;        // String or Supplier<String>
+        final Throwable thrown;
+
+        Entry(boolean error, Object msg, Throwable thrown) {
+            this.error = error;
+            this.msg = msg;
+            this.thrown = thrown;
+        }
+    }
+
+    private static final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(CAPACITY);
+    // The console streams as they are when the class loads. Going through System.out/err
+    // keeps our lines whole next to other println() calls and honours System.setOut()/setErr()
+    private static final PrintStream out = System.out;
+    private static final PrintStream err = System.err;
+
+    // Lines queued but not written yet
+    private static final AtomicInteger unwritten = new AtomicInteger();
+    // Counted by every logging thread, so it must be atomic
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile long written = 0;
+
+    static {
+        Thread t = new Thread(AsyncLog::writeLoop, "AsyncLog");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private AsyncLog() {}
+
+    // --- LOGGING ---
+
+    public static void info(String msg) { log(false, msg, null); }
+
+    // The text is only built if the line is written
+    public static void info(Supplier<String> msg) { log(false, msg, null); }
+
+    public static void error(String msg) { log(true, msg, null); }
+
+    // The stack trace is printed after the message (like printStackTrace)
+    public static void error(String msg, Throwable t) { log(true, msg, t); }
+
+    public static void error(Supplier<String> msg) { log(true, msg, null); }
+
+    private static void log(boolean error, Object msg, Throwable t) {
+        unwritten.incrementAndGet();
+        if (!queue.offer(new Entry(error, msg, t))) {
+            unwritten.decrementAndGet();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits (up to 'timeoutMs') until every queued line has been written.
+     * Call this before the program exits, e.g. in a shutdown hook.
+     */
+    public static void flush(long timeoutMs) {
+        long end = System.nanoTime() + timeoutMs * 1_000_000;
+        while (unwritten.get() > 0 && System.nanoTime() - end < 0) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Lines lost because the queue was full
+    public static long dropped() { return dropped.get(); }
+    // Lines written so far
+    public static long written() { return written; }
+
+    // --- WRITER THREAD ---
+
+    private static void writeLoop() {
+        List<Entry> batch = new ArrayList<>(MAX_BATCH);
+        while (true) {
+            try {
+                Entry first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                for (Entry e : batch) write(e);
+                out.flush();
+                err.flush();
+                written += batch.size();
+            } catch (InterruptedException e) {
+                return;
+            } catch (Throwable t) {
+                // A Supplier failed: report it and keep going
+                err.println("AsyncLog: could not write a log line: " + t);
+                err.flush();
+            } finally {
+                unwritten.addAndGet(-batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void write(Entry e) {
+        String text = (e.msg instanceof Supplier) ? ((Supplier<String>) e.msg).get() : (String) e.msg;
+        PrintStream ps = e.error ? err : out;
+        ps.println(text);
+        if (e.thrown != null) {
+            StringWriter sw = new StringWriter();
+            e.thrown.printStackTrace(new PrintWriter(sw));
+            ps.print(sw);
+        }
+    }
+
+    /**
+     * Lets through at most 'perSecond' lines (with short bursts), and/or only
+     * every n-th line. Use it in front of per-packet logging:
+     *   if (limiter.tryAcquire()) AsyncLog.info(() -> ...);
+     */
+    public static final class Limiter {
+        private final double perNano;
+        private final double burst;
+        private final int sampleEvery;
+        private double tokens;
+        private long last = System.nanoTime();
+        private long seen = 0;
+        private long skipped = 0;
+
+        /**
+         * @param perSecond Most lines per second (0 = no limit).
+         * @param sampleEvery Only consider every n-th call (1 = all of them).
+         */
+        public Limiter(double perSecond, int sampleEvery) {
+            if (perSecond < 0 || sampleEvery < 1) {
+                throw new IllegalArgumentException("perSecond must be >= 0 and sampleEvery >= 1");
+            }
+            this.perNano = perSecond / 1e9;
+            this.burst = Math.max(1, perSecond);
+            this.sampleEvery = sampleEvery;
+            this.tokens = burst;
+        }
+
+        /**
+         * @return true if this line should be logged.
+         */
+        public synchronized boolean tryAcquire() {
+            if (seen++ % sampleEvery != 0) {
+                skipped++;
+                return false;
+            }
+            if (perNano == 0) return true;
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - last) * perNano);
+            last = now;
+            if (tokens < 1) {
+                skipped++;
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+
+        /**
+         * Number of lines skipped since the last call (and resets it).
+         * Handy to add "(N skipped)" to the next line that is logged.
+         */
+        public synchronized long takeSkipped() {
+            long n = skipped;
+            skipped = 0;
+            return n;
+        }
+    }
+}
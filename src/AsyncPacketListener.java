@@ -0,0 +1,227 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wraps a slow listener (like the debug logger) so it runs on its own thread.
+ * The bus only copies the packet fields into a bounded queue and moves on,
+ * so the slow listener can never hold up the Game Engine.
+ * The worker hands everything that piled up to the listener as one batch
+ * (onPackets), so a busy listener catches up in few calls.
+ * When the queue is full, the Overflow policy decides what happens.
+ * Create it with PacketBus.addAsync().
+ */
+public class AsyncPacketListener implements PacketListener, AutoCloseable {
+    /**
+     * What to do with a new packet when the queue is full.
+     */
+    public enum Overflow {
+        // Wait until there is room (the bus waits too, use only for listeners that must see everything)
+        BLOCK,
+        // Throw away the oldest waiting packet to make room
+        DROP_OLDEST,
+        // Throw away the new packet
+        DROP_NEWEST
+    }
+
+    // Most packets handed to the target in one onPackets() call
+    static final int MAX_DELIVER = 256;
+
+    private final PacketListener target;
+    private final Overflow overflow;
+
+    // --- QUEUE (guarded by lock) ---
+    // Packed [port][team][flags][value] and receive time per slot
+    private final int[] packets;
+    private final long[] stamps;
+    private int head = 0, count = 0;
+    private boolean consumerWaiting = false;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // --- STATISTICS ---
+    private volatile long delivered = 0;
+    private volatile long dropped = 0;
+    private volatile long errors = 0;
+
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * Starts the listener's thread.
+     * @param target The listener that does the real work.
+     * @param capacity How many packets may wait.
+     * @param overflow What to do when the queue is full.
+     */
+    public AsyncPacketListener(PacketListener target, int capacity, Overflow overflow) {
+        this(target, capacity, overflow, "Listener-" + target.getClass().getSimpleName());
+    }
+
+    /**
+     * Same, with a name for the listener's thread.
+     */
+    public AsyncPacketListener(PacketListener target, int capacity, Overflow overflow, String threadName) {
+        if (target == null || overflow == null) {
+            throw new IllegalArgumentException("target and overflow must be set");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.target = target;
+        this.overflow = overflow;
+        this.packets = new int[capacity];
+        this.stamps = new long[capacity];
+
+        worker = new Thread(this::deliverLoop, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void onPacket(Packet p) {
+        onPacket(p.team(), p.flags(), p.value(), 0, 0L);
+    }
+
+    @Override
+    public void onPacket(int team, int flags, int value) {
+        onPacket(team, flags, value, 0, 0L);
+    }
+
+    /**
+     * Called by the bus: queues the packet and returns (unless the policy is BLOCK and we are full).
+     */
+    @Override
+    public void onPacket(int team, int flags, int value, int port, long rxNanos) {
+        lock.lock();
+        try {
+            enqueue(team, flags, value, port, rxNanos);
+            // Only wake the worker if it is sleeping
+            if (consumerWaiting) notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a whole batch with one lock and at most one wake-up.
+     */
+    @Override
+    public void onPackets(PacketBatch batch) {
+        lock.lock();
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                enqueue(batch.team(i), batch.flags(i), batch.value(i), batch.port(i), batch.rxNanos(i));
+            }
+            if (consumerWaiting) notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Adds one packet to the queue (called with the lock held)
+    private void enqueue(int team, int flags, int value, int port, long rxNanos) {
+        if (count == packets.length) {
+            if (overflow == Overflow.DROP_NEWEST) {
+                dropped++;
+                return;
+            } else if (overflow == Overflow.DROP_OLDEST) {
+                head = (head + 1) % packets.length;
+                count--;
+                dropped++;
+            } else {
+                // Let the worker empty the queue while we wait
+                if (consumerWaiting) notEmpty.signal();
+                while (running && count == packets.length) notFull.awaitUninterruptibly();
+                if (!running) return;
+            }
+        }
+        int slot = (head + count) % packets.length;
+        packets[slot] = (port & 0xFF) << 24 | (team & 0xFF) << 16 | (flags & 0xFF) << 8 | (value & 0xFF);
+        stamps[slot] = rxNanos;
+        count++;
+    }
+
+    /**
+     * The worker thread: takes everything that is waiting (up to MAX_DELIVER)
+     * and hands it to the target as one batch.
+     */
+    private void deliverLoop() {
+        PacketBatch out = new PacketBatch(Math.min(MAX_DELIVER, packets.length));
+        while (running) {
+            out.clear();
+            lock.lock();
+            try {
+                while (running && count == 0) {
+                    consumerWaiting = true;
+                    try {
+                        notEmpty.await(100, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    } finally {
+                        consumerWaiting = false;
+                    }
+                }
+                if (!running) return;
+                while (count > 0 && out.size() < out.capacity()) {
+                    int packed = packets[head];
+                    out.add((packed >>> 16) & 0xFF, (packed >>> 8) & 0xFF, packed & 0xFF, packed >>> 24, stamps[head]);
+                    head = (head + 1) % packets.length;
+                    count--;
+                }
+                if (overflow == Overflow.BLOCK) notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                target.onPackets(out);
+                delivered += out.size();
+            } catch (Throwable t) {
+                // Keep running even if the listener fails
+                errors++;
+                AsyncLog.error("Error in async PacketListener " +
+                        target.getClass().getSimpleName() + ":", t);
+            }
+        }
+    }
+
+    // The listener behind this queue
+    public PacketListener target() { return target; }
+
+    public long delivered() { return delivered; }
+    public long dropped() { return dropped; }
+    public long errors() { return errors; }
+
+    // Number of packets waiting right now
+    public int pending() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the thread. Packets still waiting are dropped.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        worker.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncPacketListener(" + target.getClass().getSimpleName() + ", " + overflow +
+                ", delivered=" + delivered + ", dropped=" + dropped + ")";
+    }
+}
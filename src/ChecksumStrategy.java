@@ -20,4 +20,46 @@ public interface ChecksumStrategy {
     default boolean valid(byte a, byte b, byte c, byte sum){
         return compute(a,b,c) == sum;
     }
-}
\ No newline at end of file
+
+    /**
+     * Batch check: keeps only the frames with a valid checksum.
+     * Frames are packed as [a][b][c][sum], like in the FrameRing. The valid ones
+     * are moved to the front of the range, in their original order.
+     * Implementations override this with a loop that works on the packed ints directly.
+     * @param frames Buffer holding the frames.
+     * @param off Index of the first frame.
+     * @param len Number of frames to check.
+     * @return How many valid frames now start at 'off'.
+     */
+    default int filterValid(int[] frames, int off, int len){
+        int kept = off;
+        for(int i = off, end = off + len; i < end; i++){
+            int f = frames[i];
+            if(valid((byte)(f >>> 24), (byte)(f >>> 16), (byte)(f >>> 8), (byte)f)) frames[kept++] = f;
+        }
+        return kept - off;
+    }
+
+    /**
+     * Same, and moves each frame's receive time (in 'stamps') along with it.
+     */
+    default int filterValid(int[] frames, long[] stamps, int off, int len){
+        int kept = off;
+        for(int i = off, end = off + len; i < end; i++){
+            int f = frames[i];
+            if(valid((byte)(f >>> 24), (byte)(f >>> 16), (byte)(f >>> 8), (byte)f)){
+                stamps[kept] = stamps[i];
+                frames[kept++] = f;
+            }
+        }
+        return kept - off;
+    }
+
+    /**
+     * Reads a checksum name: "crc8" or "sum" (the default, also for anything unknown).
+     */
+    static ChecksumStrategy parse(String name){
+        if(name != null && name.toLowerCase().startsWith("crc")) return new Crc8Checksum();
+        return new SumModuloChecksum();
+    }
+}
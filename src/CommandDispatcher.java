@@ -31,7 +31,15 @@ public class CommandDispatcher {
      * @param code The color number (0=Off, 1=Green, 2=Yellow, 3=Red).
      */
     public void setRgbAll(int code){
-        send(Commands.setRgb(1, code));
-        send(Commands.setRgb(2, code));
+        setRgbAll(code, 2);
+    }
+
+    /**
+     * Changes the LED color for teams 1..teams, one message per team.
+     * @param code The color number (0=Off, 1=Green, 2=Yellow, 3=Red).
+     * @param teams Number of teams.
+     */
+    public void setRgbAll(int code, int teams){
+        for (int t = 1; t <= teams; t++) send(Commands.setRgb(t, code));
     }
 }
\ No newline at end of file
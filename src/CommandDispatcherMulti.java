@@ -4,17 +4,34 @@ import java.util.stream.*;
 /**
  * A smarter version of CommandDispatcher.
  * It can handle multiple USB connections at once.
- * It checks the Team ID in the message to decide which USB port to use.
+ * It looks up the Team ID in a routing table to decide which USB port to use.
+ * Every port has its own TransmitQueue (and writer thread), so a broadcast is
+ * sent on all ports in parallel and a slow dongle only delays its own teams.
  */
-public class CommandDispatcherMulti extends CommandDispatcher {
+public class CommandDispatcherMulti extends CommandDispatcher implements AutoCloseable {
+    // Marks a team that has no port in the routing table
+    private static final int NO_PORT = -1;
+
     // A list of all working USB connections.
     private final List<SerialEndpoint> ports;
+    // One send queue + writer per port (same order as 'ports')
+    private final TransmitQueue[] writers;
+    // Port index per team ID. Replaced as a whole when it changes, so send() needs no lock.
+    private volatile int[] route = new int[256];
 
     /**
      * Constructor.
      * Allows you to pass in a list of USB connections (endpoints).
+     * Output is paced for the 9600 baud XBee link.
      */
     public CommandDispatcherMulti(SerialEndpoint... endpoints){
+        this(9600, endpoints);
+    }
+
+    /**
+     * Constructor with a custom link speed for pacing.
+     */
+    public CommandDispatcherMulti(int baud, SerialEndpoint... endpoints){
         // We pass 'null' to the parent class because we manage the list ourselves here.
         super(null);
         
@@ -27,6 +44,41 @@ public class CommandDispatcherMulti extends CommandDispatcher {
         if (this.ports.isEmpty()) {
             throw new IllegalArgumentException("At least one SerialEndpoint is required");
         }
+
+        writers = new TransmitQueue[ports.size()];
+        for (int i = 0; i < writers.length; i++) writers[i] = new TransmitQueue(ports.get(i), baud);
+
+        // Default table: teams are spread over the ports in turn
+        // Team 1 -> Port 0, Team 2 -> Port 1, ... and around again
+        int[] r = new int[256];
+        r[0] = NO_PORT;
+        for (int t = 1; t < 255; t++) r[t] = (t - 1) % ports.size();
+        r[Commands.TEAM_ALL & 0xFF] = NO_PORT;
+        route = r;
+    }
+
+    /**
+     * Sends one team's commands to a specific port from now on.
+     * @param team Team ID (1..254).
+     * @param port Index of the port (same order as in the constructor), or -1 for "all ports".
+     */
+    public synchronized void route(int team, int port){
+        if (team < 1 || team > 254) {
+            throw new IllegalArgumentException("team must be between 1 and 254");
+        }
+        if (port < NO_PORT || port >= ports.size()) {
+            throw new IllegalArgumentException("No port with index " + port);
+        }
+        int[] r = route.clone();
+        r[team] = port;
+        route = r;
+    }
+
+    /**
+     * The port index a team is routed to (-1 = all ports).
+     */
+    public int portFor(int team){
+        return route[team & 0xFF];
     }
 
     /**
@@ -34,36 +86,64 @@ public class CommandDispatcherMulti extends CommandDispatcher {
      * It looks at the Team ID to pick the right USB port.
      */
     @Override
-    public synchronized void send(Command c){
+    public void send(Command c){
         byte[] f = c.toBytes();
         // Get the Team ID number from the first byte.
-        int team = f[0] & 0xFF;
+        int idx = route[f[0] & 0xFF];
 
-        // CASE 1: BROADCAST (Send to everyone)
-        // If the ID is 255 (0xFF), send the message to every USB port we have.
-        if (team == 0xFF) {
-            for (SerialEndpoint p : ports) p.write(f);
+        // CASE 1: SINGLE PORT
+        // The routing table says which queue gets it. Never blocks on the port.
+        if (idx != NO_PORT) {
+            writers[idx].submit(f);
             return;
         }
 
-        // CASE 2: SINGLE PORT
-        // If we only have one USB stick plugged in, just send it there.
-        if (ports.size() == 1) {
-            ports.get(0).write(f);
-            return;
-        }
+        // CASE 2: BROADCAST (or a team without a port)
+        // Every port's writer sends it at the same time.
+        for (TransmitQueue w : writers) w.submit(f);
+    }
 
-        // CASE 3: MULTIPLE PORTS (Routing)
-        // If Team 1 -> Use Port 0
-        // If Team 2 -> Use Port 1
-        int idx = (team == 1) ? 0 : (team == 2 ? 1 : 0);
-        
-        // Check if that port actually exists before sending.
-        if (idx < ports.size()) {
-            ports.get(idx).write(f);
-        } else {
-            // Safety: If we can't find the right port, send to everyone.
-            for (SerialEndpoint p : ports) p.write(f);
+    /**
+     * A dispatcher that sends everything to one port, whatever the routing
+     * table says. Used by an arena that is bound to one dongle.
+     */
+    public CommandDispatcher forPort(int port){
+        if (port < 0 || port >= writers.length) {
+            throw new IllegalArgumentException("No port with index " + port);
         }
+        TransmitQueue w = writers[port];
+        return new CommandDispatcher(null) {
+            @Override
+            public void send(Command c) { w.submit(c.toBytes()); }
+        };
+    }
+
+    /**
+     * The send queue of one port (for statistics).
+     */
+    public TransmitQueue writer(int port){ return writers[port]; }
+
+    public int portCount(){ return ports.size(); }
+
+    /**
+     * Records every sent frame in a journal, tagged with its port index. Null turns it off.
+     */
+    public void setJournal(MatchJournal journal){
+        for (int i = 0; i < writers.length; i++) writers[i].setJournal(journal, i);
+    }
+
+    /**
+     * Forgets the last sent LED/fire mode state on every port.
+     */
+    public void invalidate(){
+        for (TransmitQueue w : writers) w.invalidate();
+    }
+
+    /**
+     * Stops all writer threads.
+     */
+    @Override
+    public void close(){
+        for (TransmitQueue w : writers) w.close();
     }
-}
\ No newline at end of file
+}
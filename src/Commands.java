@@ -13,10 +13,35 @@ public final class Commands {
     // Broadcast ID
     public static final byte TEAM_ALL     = (byte)0xFF;
 
+    // Checksum for outgoing packets; must match the one the cars check
+    private static volatile ChecksumStrategy checksum = new SumModuloChecksum();
+
+    /**
+     * Picks the checksum for all commands built from now on (default: sum modulo 256).
+     * Set it once at startup, before any command is sent.
+     */
+    public static void setChecksum(ChecksumStrategy sum){
+        if(sum == null) throw new IllegalArgumentException("sum must not be null");
+        checksum = sum;
+    }
+
+    public static ChecksumStrategy checksum(){ return checksum; }
+
     /**
      * Helper to compute the checksum for outgoing packets.
      */
-    public static byte sum3(byte a, byte b, byte c){ return (byte)((a + b + c) & 0xFF); }
+    public static byte sum3(byte a, byte b, byte c){ return checksum.compute(a, b, c); }
+
+    /**
+     * Creates a command from its three parts (the checksum is added here).
+     * @param team Target team ID (or TEAM_ALL)
+     * @param cmd Operation code (CMD_SET_RGB, CMD_BEEP or CMD_FIREMODE)
+     * @param arg Argument for the operation
+     */
+    public static Command frame(int team, int cmd, int arg){
+        return () -> new byte[]{ (byte)team, (byte)cmd, (byte)arg,
+                                 sum3((byte)team, (byte)cmd, (byte)arg) };
+    }
 
     /**
      * Creates a command to set the RGB LED color.
@@ -0,0 +1,65 @@
+/**
+ * Connects the Game Engine straight to the serial port (-Dtx=direct).
+ * Every command is written right away, without the TransmitQueue's pacing,
+ * priorities and duplicate filter. It counts what it writes, so the port
+ * still shows up in JConsole (PortStats).
+ */
+public class DirectCommandDispatcher extends CommandDispatcher {
+
+    // --- STATISTICS ---
+    private volatile long framesSent = 0;
+    private volatile long writeErrors = 0;
+    // Frames sent per command ID (index 0 = unknown commands, guarded by 'this')
+    private final long[] sentByCmd = new long[Commands.CMD_FIREMODE + 1];
+
+    /**
+     * @param serial The port to write to. Going through the endpoint means a
+     *               failed write reaches its SerialSupervisor, like the queued path.
+     */
+    public DirectCommandDispatcher(SerialEndpoint serial) {
+        super(serial);
+        if (serial == null) {
+            throw new IllegalArgumentException("serial must not be null");
+        }
+    }
+
+    @Override
+    public synchronized void send(Command c) {
+        byte[] frame = c.toBytes();
+        int cmd = frame[1] & 0xFF;
+        // Always take the hit stamp, so it does not stick to the engine thread when the frame is skipped
+        long hitRx = (LatencyStats.ENABLED && cmd == Commands.CMD_BEEP && (frame[2] & 0xFF) == 1)
+                ? LatencyStats.takeHitRx() : 0;
+        // While the link is down (or being reopened) commands are skipped
+        if (!serial.isOpen()) return;
+        try {
+            serial.write(frame);
+        } catch (RuntimeException e) {
+            writeErrors++;
+            throw e;
+        }
+        // No queue here, so only the end-to-end stage is recorded (TX_QUEUE stays empty)
+        if (hitRx != 0) LatencyStats.HIT_TO_TX.record(System.nanoTime() - hitRx);
+        framesSent++;
+        sentByCmd[cmd < sentByCmd.length ? cmd : 0]++;
+    }
+
+    // Frames written (one write per frame)
+    public long framesSent() { return framesSent; }
+    public long writeErrors() { return writeErrors; }
+
+    /**
+     * Number of frames sent with one command ID (Commands.CMD_SET_RGB, ...).
+     */
+    public synchronized long sent(int cmd) {
+        return (cmd > 0 && cmd < sentByCmd.length) ? sentByCmd[cmd] : sentByCmd[0];
+    }
+
+    // The port this dispatcher writes to
+    public SerialEndpoint port() { return serial; }
+
+    @Override
+    public String toString() {
+        return "DirectCommandDispatcher(" + serial.transport() + ", sent=" + framesSent + ", errors=" + writeErrors + ")";
+    }
+}
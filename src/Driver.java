@@ -1,104 +1,282 @@
 import jssc.SerialPortList;
 import javax.swing.SwingUtilities;
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Date;
+import java.util.List;
 
 /**
  * The starting point of the application.
  * This class sets up the hardware, connects the logic, and starts the background tasks.
  */
 public class Driver {
+    // Speed of the XBee radio link
+    private static final int BAUD = 9600;
 
     /**
-     * Connects the Game Engine to the Serial Port.
+     * Learns which dongle each car talks through: the first packet of a team
+     * (or one that arrives on a different dongle) updates the routing table.
      */
-    private static class HandleCommandDispatcher extends CommandDispatcher {
-        private final SerialPortHandle handle;
+    private static class RouteLearner implements PacketListener {
+        private final CommandDispatcherMulti out;
 
-        public HandleCommandDispatcher(SerialPortHandle handle) {
-            super(null); 
-            this.handle = handle;
+        public RouteLearner(CommandDispatcherMulti out) {
+            this.out = out;
         }
 
         @Override
-        public synchronized void send(Command c) {
-            if (handle == null || !handle.isOpen()) return;
-            byte[] frame = c.toBytes();
-            handle.write(frame);
+        public void onPacket(Packet p) {}
+
+        @Override
+        public void onPacket(int team, int flags, int value, int port, long rxNanos) {
+            if (team < 1 || team > 254 || out.portFor(team) == port) return;
+            out.route(team, port);
+            AsyncLog.info("Team " + team + " is on port " + port);
         }
     }
 
     public static void main(String[] args) {
         // Handle background errors
         Thread.setDefaultUncaughtExceptionHandler((t, e) -> {
-            System.err.println("Uncaught in thread " + t.getName() + ":");
-            e.printStackTrace();
+            AsyncLog.error("Uncaught in thread " + t.getName() + ":", e);
         });
 
-        // 1. List available serial ports
-        System.out.println("Available serial ports:");
-        String[] ports = SerialPortList.getPortNames();
-        for (String p : ports) System.out.println("  " + p);
-        
-        // 2. Select port
-        String preferred = System.getProperty("port", ports.length > 0 ? ports[0] : "COM7");
-        String portName = choosePortOrFallback(preferred, ports);
-        int baud = 9600;
-
-        System.out.println("Using ZigBee dongle on " + portName);
-
-        // 3. Open Serial Port
-        SerialPortHandle handle = new SerialPortHandle(portName, baud);
-        handle.open();   // open the port only once here
+        // 1-3. Open the links to the cars (USB dongles or simulated arenas)
+        // -Dchecksum=sum|crc8 picks the frame checksum (both directions; the cars must match)
+        ChecksumStrategy checksum = ChecksumStrategy.parse(System.getProperty("checksum"));
+        Commands.setChecksum(checksum);
+        // Port index per team, if port discovery heard the team (-1 = not known)
+        int[] teamPort = new int[256];
+        Arrays.fill(teamPort, -1);
+        List<SerialTransport> handles = openTransports(checksum, teamPort);
 
-        // Create a SerialEndpoint that reuses the same opened handle
-        SerialEndpoint endpoint = new SerialEndpoint(handle);
+        // Create a SerialEndpoint per link that reuses the same opened handle
+        SerialEndpoint[] endpoints = new SerialEndpoint[handles.size()];
+        for (int i = 0; i < endpoints.length; i++) endpoints[i] = new SerialEndpoint(handles.get(i));
 
         // 4. Initialize Components
-        BlockingQueue<byte[]> inQ = new LinkedBlockingQueue<>(512);
-        ChecksumStrategy checksum = new SumModuloChecksum();
+        // -Dwait=blocking|yielding|spin picks how the Decoder waits for frames.
+        // Every dongle gets its own ring; they share the WaitStrategy so any Reader wakes the Decoder.
+        WaitStrategy wait = WaitStrategy.parse(System.getProperty("wait"));
+        FrameRing[] rings = new FrameRing[endpoints.length];
+        for (int i = 0; i < rings.length; i++) rings[i] = new FrameRing(512, wait);
         PacketParser parser = new PacketParser(checksum);
-        PacketBus bus = new PacketBus();
+        // -Dhb.keepAliveMs=N drops repeated heartbeats, forwarding one per team every N ms
+        long keepAliveMs = Long.getLong("hb.keepAliveMs", 0L);
+        HeartbeatFilter hbFilter = keepAliveMs > 0 ? new HeartbeatFilter(keepAliveMs) : null;
+        PacketBus bus = (hbFilter != null) ? hbFilter : new PacketBus();
 
         // 5. Initialize Engine and UI
-        CommandDispatcher dispatcher = new HandleCommandDispatcher(handle);
-        ScoreboardUI ui = new ScoreboardUI();
-        GameEngine engine = new GameEngine(dispatcher);
-        engine.addListener(ui);
+        // Commands are queued and paced to the link speed; -Dtx=direct writes them straight away.
+        // With several dongles every port gets its own queue, and teams are routed to their dongle.
+        CommandDispatcher dispatcher;
+        if (endpoints.length > 1) {
+            dispatcher = new CommandDispatcherMulti(BAUD, endpoints);
+        } else if ("direct".equalsIgnoreCase(System.getProperty("tx"))) {
+            dispatcher = new DirectCommandDispatcher(endpoints[0]);
+        } else {
+            dispatcher = new PacedCommandDispatcher(endpoints[0], BAUD);
+        }
+        // No window on a machine without a screen (e.g. a build box running the simulator)
+        boolean headless = GraphicsEnvironment.isHeadless();
+        List<ScoreboardUI> uis = new ArrayList<>();
+        PacketListener game;
+        GameEngine engine;
+        // -Dspectators=PORT streams the game state over TCP (arena N uses PORT+N)
+        int spectatorPort = Integer.getInteger("spectators", 0);
+        List<SpectatorServer> spectators = new ArrayList<>();
+
+        // -Darenas=1-2,3-4 runs several independent matches, one per team range
+        // (1-2@0,1-2@1 binds each match to one dongle, so they can use the same team IDs)
+        String arenaSpec = System.getProperty("arenas");
+        boolean portArenas = false;
+        if (arenaSpec != null) {
+            ArenaManager arenas = new ArenaManager();
+            char name = 'A';
+            for (int[] range : ArenaManager.parseRanges(arenaSpec)) {
+                int port = range[2];
+                CommandDispatcher out = dispatcher;
+                if (port != Arena.ANY_PORT) {
+                    if (port >= endpoints.length) {
+                        throw new IllegalArgumentException("Arena " + name + " uses port " + port +
+                                ", but only " + endpoints.length + " port(s) are open");
+                    }
+                    if (dispatcher instanceof CommandDispatcherMulti) {
+                        out = ((CommandDispatcherMulti) dispatcher).forPort(port);
+                    }
+                    portArenas = true;
+                }
+                Arena a = new Arena(String.valueOf(name++), range[0], range[1], out, port);
+                arenas.add(a);
+                if (!headless) {
+                    ScoreboardUI ui = new ScoreboardUI(range[1]);
+                    ui.setTitle("Battle Car Scoreboard - Arena " + a.name() +
+                            " (teams " + range[0] + "-" + (range[0] + range[1] - 1) + ")");
+                    a.engine().addListener(ui);
+                    uis.add(ui);
+                }
+                if (spectatorPort > 0) {
+                    SpectatorServer s = new SpectatorServer(spectatorPort + spectators.size());
+                    a.engine().addListener(s);
+                    spectators.add(s);
+                }
+                System.out.println("Hosting " + a);
+            }
+            game = arenas;
+            engine = arenas.arenas().get(0).engine();
+        } else {
+            // -Dteams=N sets the number of teams (default: 2, or the number of simulated cars)
+            int teams = Integer.getInteger("teams", Integer.getInteger("sim", 2));
+            engine = new GameEngine(dispatcher, teams);
+            if (!headless) {
+                ScoreboardUI ui = new ScoreboardUI(teams);
+                engine.addListener(ui);
+                uis.add(ui);
+            }
+            if (spectatorPort > 0) {
+                SpectatorServer s = new SpectatorServer(spectatorPort);
+                engine.addListener(s);
+                spectators.add(s);
+            }
+            game = engine;
+        }
 
         // 6. Debug Logger (Prints received packets to console)
-        bus.add(p -> {
-            String bits = String.format("%4s", Integer.toBinaryString(p.flags() & 0xF))
-                    .replace(' ', '0');
-            System.out.println(
-                    "RX packet: team=" + p.team() +
-                    " flags=" + bits +
-                    " [IR=" + p.ir() +
-                    ", LDR=" + p.ldr() +
-                    ", LIGHT=" + p.light() +
-                    "] value=" + p.value()
-            );
-        });
+        // It runs on its own thread and drops old lines if the console cannot keep up,
+        // so printing never slows down the engine. The text is built on the log thread,
+        // and -Drx.log.rate=N (lines per second, 0 = all) / -Drx.log.sample=N (every N-th)
+        // keep it from flooding the console.
+        AsyncLog.Limiter rxLimit = new AsyncLog.Limiter(
+                Double.parseDouble(System.getProperty("rx.log.rate", "50")),
+                Integer.getInteger("rx.log.sample", 1));
+        AsyncPacketListener rxLog = bus.addAsync(p -> {
+            if (!rxLimit.tryAcquire()) return;
+            long skipped = rxLimit.takeSkipped();
+            AsyncLog.info(() -> {
+                String bits = String.format("%4s", Integer.toBinaryString(p.flags() & 0xF))
+                        .replace(' ', '0');
+                return "RX packet: team=" + p.team() +
+                        " flags=" + bits +
+                        " [IR=" + p.ir() +
+                        ", LDR=" + p.ldr() +
+                        ", LIGHT=" + p.light() +
+                        "] value=" + p.value() +
+                        (skipped > 0 ? " (" + skipped + " skipped)" : "");
+            });
+        }, 1024, AsyncPacketListener.Overflow.DROP_OLDEST);
 
-        bus.add(engine);
+        // Keep the routing table in step with where each car's packets come from
+        // (starting with what the port discovery heard). Arenas bound to a port send there
+        // directly, and their team IDs may repeat on other ports, so then nothing is learned.
+        if (dispatcher instanceof CommandDispatcherMulti && !portArenas) {
+            CommandDispatcherMulti multi = (CommandDispatcherMulti) dispatcher;
+            for (int t = 1; t < 255; t++) if (teamPort[t] >= 0) multi.route(t, teamPort[t]);
+            bus.add(new RouteLearner(multi));
+        }
+        bus.add(game);
 
         // 7. Show UI
-        SwingUtilities.invokeLater(() -> ui.setVisible(true));
+        for (ScoreboardUI ui : uis) SwingUtilities.invokeLater(() -> ui.setVisible(true));
 
-        // 8. Start Background Threads
-        Thread reader = new Thread(new SerialReader(endpoint, inQ), "Reader"); 
-        Thread decoder = new Thread(new PacketDecoder(inQ, parser, bus), "Decoder");
+        // Reopen a dongle whose read or write fails (cable bump, USB reset), then send the
+        // engines' LED colors and fire mode again; -Dreconnect=false lets the Reader die as before
+        List<GameEngine> engines = new ArrayList<>();
+        if (game instanceof ArenaManager) {
+            for (Arena a : ((ArenaManager) game).arenas()) engines.add(a.engine());
+        } else {
+            engines.add(engine);
+        }
+        List<SerialSupervisor> supervisors = new ArrayList<>();
+        if (Boolean.parseBoolean(System.getProperty("reconnect", "true"))) {
+            for (int i = 0; i < endpoints.length; i++) {
+                SerialSupervisor sup = new SerialSupervisor(endpoints[i]);
+                int port = i;
+                sup.setOnReconnect(() -> {
+                    // Whatever this port "last sent" may never have arrived
+                    if (dispatcher instanceof PacedCommandDispatcher) {
+                        ((PacedCommandDispatcher) dispatcher).queue().invalidate();
+                    } else if (dispatcher instanceof CommandDispatcherMulti) {
+                        ((CommandDispatcherMulti) dispatcher).writer(port).invalidate();
+                    }
+                    for (GameEngine e : engines) e.resendState();
+                });
+                supervisors.add(sup);
+            }
+        }
+
+        // 8. Start Background Threads (one Reader per dongle, one Decoder that merges them)
+        SerialReader[] readers = new SerialReader[endpoints.length];
+        for (int i = 0; i < endpoints.length; i++) {
+            String name = endpoints.length == 1 ? "Reader" : "Reader-" + i;
+            readers[i] = new SerialReader(endpoints[i], rings[i], checksum);
+            new Thread(readers[i], name).start();
+        }
+        PacketDecoder packetDecoder = new PacketDecoder(parser, bus, rings);
+
+        // -Djournal=DIR records all traffic in DIR/match-<date>-NNNN.bcj
+        MatchJournal journal = openJournal();
+        if (journal != null) {
+            packetDecoder.setJournal(journal);
+            if (dispatcher instanceof PacedCommandDispatcher) {
+                ((PacedCommandDispatcher) dispatcher).setJournal(journal);
+            } else if (dispatcher instanceof CommandDispatcherMulti) {
+                ((CommandDispatcherMulti) dispatcher).setJournal(journal);
+            } else {
+                AsyncLog.error("Journal records received frames only (-Dtx=direct)");
+            }
+            AsyncLog.info("Recording to " + journal);
+        }
+
+        // Live counters for JConsole / VisualVM (domain "battlecar")
+        new PipelineStats(readers, rings, parser, bus).register();
+        if (dispatcher instanceof PacedCommandDispatcher) {
+            new PortStats(((PacedCommandDispatcher) dispatcher).queue()).register();
+        } else if (dispatcher instanceof CommandDispatcherMulti) {
+            CommandDispatcherMulti multi = (CommandDispatcherMulti) dispatcher;
+            for (int i = 0; i < multi.portCount(); i++) new PortStats(multi.writer(i)).register();
+        } else if (dispatcher instanceof DirectCommandDispatcher) {
+            new PortStats((DirectCommandDispatcher) dispatcher).register();
+        }
+
+        Thread decoder = new Thread(packetDecoder, "Decoder");
         Thread engineThread = new Thread(engine::runLoop, "Engine");
 
-        reader.start();
         decoder.start();
         engineThread.start();
+        startConsole(endpoints);
 
         // 9. Close port when program ends
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            try { endpoint.close(); } catch (Exception ignored) {}
-            System.out.println("Serial port closed.");
+            // Closing the ports on purpose must not look like a cable bump
+            for (SerialSupervisor sup : supervisors) sup.close();
+            for (SerialEndpoint e : endpoints) {
+                try { e.close(); } catch (Exception ignored) {}
+            }
+            AsyncLog.flush(500);
+            System.out.println("Serial link closed.");
+            if (LatencyStats.ENABLED) System.out.print(LatencyStats.dump());
+            if (journal != null) {
+                journal.close();
+                System.out.println(journal);
+            }
+            if (hbFilter != null) System.out.println(hbFilter);
+            System.out.println(rxLog);
+            for (SpectatorServer s : spectators) System.out.println(s);
+            for (SerialSupervisor sup : supervisors) if (sup.failures() > 0) System.out.println(sup);
+            if (dispatcher instanceof PacedCommandDispatcher) {
+                System.out.println(((PacedCommandDispatcher) dispatcher).queue());
+            } else if (dispatcher instanceof CommandDispatcherMulti) {
+                CommandDispatcherMulti multi = (CommandDispatcherMulti) dispatcher;
+                for (int i = 0; i < multi.portCount(); i++) System.out.println(multi.writer(i));
+            } else {
+                System.out.println(dispatcher);
+            }
         }));
 
         try {
@@ -108,6 +286,155 @@ public class Driver {
         }
     }
 
+    /**
+     * Opens the links to the cars.
+     * With -Dsim=N an in-memory arena with N cars is used instead of a USB port
+     * (-Dsim.hbMs sets the heartbeat interval, -Dsim.hits the hits per second,
+     * -Dsim.radios=K splits the cars over K simulated dongles, -Dsim.discover=true
+     * finds them with the port discovery like real dongles).
+     * Otherwise -Dport=COM3,COM4 opens one or more dongles. Without -Dport (or with
+     * -Dport=auto) every port is tried at once and the ones that hear cars are used.
+     * @param teamPort Filled with the link index of every team the discovery heard.
+     */
+    private static List<SerialTransport> openTransports(ChecksumStrategy checksum, int[] teamPort) {
+        List<SerialTransport> links = new ArrayList<>();
+        int simCars = Integer.getInteger("sim", 0);
+        if (simCars > 0) {
+            double hbMs = Double.parseDouble(System.getProperty("sim.hbMs", "200"));
+            double hits = Double.parseDouble(System.getProperty("sim.hits", "0.5"));
+            int radios = Math.max(1, Math.min(simCars, Integer.getInteger("sim.radios", 1)));
+            boolean discover = Boolean.getBoolean("sim.discover");
+            int first = 1;
+            for (int r = 0; r < radios; r++) {
+                // Spread the cars as evenly as possible, with consecutive team IDs per radio
+                int cars = simCars / radios + (r < simCars % radios ? 1 : 0);
+                SerialTransport sim = new SimulatedArena(first, cars, checksum, hbMs, hits, 42L + r);
+                if (!discover) sim.open();
+                links.add(sim);
+                first += cars;
+            }
+            if (!discover) return links;
+            List<SerialTransport> found = discover(links, checksum, simCars, teamPort);
+            if (found.isEmpty()) throw new IllegalStateException("No simulated radio heard any car");
+            return found;
+        }
+
+        // 1. List available serial ports
+        System.out.println("Available serial ports:");
+        String[] ports = SerialPortList.getPortNames();
+        for (String p : ports) System.out.println("  " + p);
+        
+        // 2. Select ports
+        // -Dread=poll switches back to the old 10ms poller
+        SerialPortHandle.ReadMode readMode = SerialPortHandle.ReadMode.parse(System.getProperty("read"));
+        String preferred = System.getProperty("port", "auto");
+        if (preferred.equalsIgnoreCase("auto")) {
+            if (ports.length > 0) {
+                // Open every port at once and keep the ones where cars answer
+                List<SerialTransport> candidates = new ArrayList<>();
+                for (String p : ports) candidates.add(portHandle(p, readMode));
+                List<SerialTransport> found = discover(candidates, checksum, Integer.getInteger("teams", 0), teamPort);
+                if (!found.isEmpty()) return found;
+                System.out.println("No car heard on any port, using " + ports[0]);
+            }
+            preferred = ports.length > 0 ? ports[0] : "COM7";
+        }
+        String[] wanted = preferred.split(",");
+        for (String w : wanted) {
+            // With one port we fall back to whatever is plugged in; with several, each must exist
+            String portName = wanted.length == 1 ? choosePortOrFallback(w.trim(), ports) : w.trim();
+            System.out.println("Using ZigBee dongle on " + portName);
+
+            // 3. Open Serial Port
+            SerialPortHandle handle = portHandle(portName, readMode);
+            handle.open();   // open the port only once here
+            links.add(handle);
+        }
+        return links;
+    }
+
+    private static SerialPortHandle portHandle(String portName, SerialPortHandle.ReadMode readMode) {
+        SerialPortHandle handle = new SerialPortHandle(portName, BAUD, readMode);
+        // The "radio" latency stage needs the arrival events, even when polling
+        if (LatencyStats.ENABLED) handle.setMeasureLatency(true);
+        return handle;
+    }
+
+    /**
+     * Runs the port discovery (-Ddiscover.ms sets how long it listens) and prints what it found.
+     * @param expectedTeams Stop listening once this many teams were heard (0 = unknown).
+     * @return The links that heard cars (open), in their original order.
+     */
+    private static List<SerialTransport> discover(List<SerialTransport> candidates, ChecksumStrategy checksum,
+                                                  int expectedTeams, int[] teamPort) {
+        long listenMs = Long.getLong("discover.ms", PortDiscovery.DEFAULT_LISTEN_MS);
+        System.out.println("Listening for cars on " + candidates.size() + " port(s)...");
+        long t0 = System.nanoTime();
+        PortDiscovery.Result r;
+        try {
+            r = new PortDiscovery(checksum, listenMs, expectedTeams).discover(candidates);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during port discovery", e);
+        }
+        for (int t = 1; t < 255; t++) teamPort[t] = r.portFor(t);
+        System.out.println("Found " + r.teams() + " team(s) in " + (System.nanoTime() - t0) / 1_000_000 +
+                " ms: " + r);
+        return r.links();
+    }
+
+    /**
+     * Reads commands typed into the console while the match runs:
+     *   lat        prints the latency histograms (needs -Dlatency=true)
+     *   lat reset  clears them
+     *   unplug [ms]  pulls the cable of every simulated radio for ms (default 300)
+     */
+    private static void startConsole(SerialEndpoint[] endpoints) {
+        Thread console = new Thread(() -> {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.equals("lat")) {
+                        System.out.print(LatencyStats.dump());
+                    } else if (line.equals("lat reset")) {
+                        LatencyStats.reset();
+                        System.out.println("Latency histograms cleared.");
+                    } else if (line.startsWith("unplug")) {
+                        String arg = line.substring("unplug".length()).trim();
+                        long ms;
+                        try {
+                            ms = arg.isEmpty() ? 300 : Long.parseLong(arg);
+                        } catch (NumberFormatException e) {
+                            System.out.println("Usage: unplug [ms]");
+                            continue;
+                        }
+                        for (SerialEndpoint e : endpoints) {
+                            if (e.transport() instanceof SimulatedArena) ((SimulatedArena) e.transport()).unplug(ms);
+                        }
+                    } else if (!line.isEmpty()) {
+                        System.out.println("Commands: lat, lat reset, unplug [ms]");
+                    }
+                }
+            } catch (IOException e) {
+                AsyncLog.error("Console closed: " + e.getMessage());
+            }
+        }, "Console");
+        console.setDaemon(true);
+        console.start();
+    }
+
+    /**
+     * Opens the match journal if -Djournal=DIR is set.
+     */
+    private static MatchJournal openJournal() {
+        String dir = System.getProperty("journal");
+        if (dir == null) return null;
+        String name = "match-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        return new MatchJournal(Paths.get(dir), name);
+    }
+
     private static String choosePortOrFallback(String preferred, String[] ports) {
         for (String p : ports) if (p.equalsIgnoreCase(preferred)) return preferred;
         return ports.length > 0 ? ports[0] : preferred;
@@ -0,0 +1,205 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed-size ring buffer that hands 4-byte frames from ONE producer thread
+ * (the Reader) to ONE consumer thread (the Decoder).
+ * Every frame is packed into an int: [team][flags][value][checksum], and
+ * carries the System.nanoTime() at which its bytes were read from the port.
+ * No locks and no objects are created per frame: the two threads only
+ * share two counters (how far each side got).
+ */
+public final class FrameRing {
+    // How long the producer sleeps when the ring is full
+    private static final long FULL_BACKOFF_NANOS = 50_000L;
+
+    private final int[] buf;
+    // Receive time of the frame in the same slot
+    private final long[] stamps;
+    private final int mask;
+    private final WaitStrategy wait;
+
+    // Next slot to read. Written only by the consumer.
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write. Written only by the producer.
+    private final AtomicLong tail = new AtomicLong();
+
+    // Producer side: own position and last seen consumer position
+    private long tailLocal = 0;
+    private long headCache = 0;
+    // Most frames ever waiting at once
+    private volatile int highWater = 0;
+    // Consumer side: own position and last seen producer position
+    private long headLocal = 0;
+    private long tailCache = 0;
+    private long lastStamp = 0;
+
+    /**
+     * @param capacity Number of frames the ring can hold (rounded up to a power of two).
+     * @param wait How the consumer waits when the ring is empty.
+     */
+    public FrameRing(int capacity, WaitStrategy wait) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) size <<= 1;
+        this.buf = new int[size];
+        this.stamps = new long[size];
+        this.mask = size - 1;
+        this.wait = (wait == null) ? WaitStrategy.blocking() : wait;
+    }
+
+    // --- PRODUCER SIDE ---
+
+    /**
+     * Adds a frame stamped with the current time if there is room.
+     * @return false if the ring is full.
+     */
+    public boolean offer(int frame) {
+        return offer(frame, System.nanoTime());
+    }
+
+    /**
+     * Adds a frame if there is room.
+     * @param rxNanos System.nanoTime() when the frame was received.
+     * @return false if the ring is full.
+     */
+    public boolean offer(int frame, long rxNanos) {
+        long t = tailLocal;
+        if (t - headCache >= buf.length) {
+            headCache = head.get();
+            if (t - headCache >= buf.length) return false;
+        }
+        buf[(int) t & mask] = frame;
+        stamps[(int) t & mask] = rxNanos;
+        tailLocal = t + 1;
+        tail.lazySet(t + 1);
+        // The cached head makes this an upper bound; only look at the real one for a new record
+        if (t + 1 - headCache > highWater) {
+            headCache = head.get();
+            int depth = (int) (t + 1 - headCache);
+            if (depth > highWater) highWater = depth;
+        }
+        wait.signal();
+        return true;
+    }
+
+    /**
+     * Adds a frame stamped with the current time, waiting while the ring is full.
+     */
+    public void put(int frame) throws InterruptedException {
+        put(frame, System.nanoTime());
+    }
+
+    /**
+     * Adds a frame, waiting while the ring is full.
+     * @param rxNanos System.nanoTime() when the frame was received.
+     */
+    public void put(int frame, long rxNanos) throws InterruptedException {
+        while (!offer(frame, rxNanos)) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+        }
+    }
+
+    // --- CONSUMER SIDE ---
+
+    /**
+     * Checks if a frame is waiting, without taking it.
+     */
+    public boolean hasNext() {
+        if (headLocal < tailCache) return true;
+        tailCache = tail.get();
+        return headLocal < tailCache;
+    }
+
+    /**
+     * Receive time of the next frame. Only valid after hasNext() returned true.
+     */
+    public long peekStamp() {
+        return stamps[(int) headLocal & mask];
+    }
+
+    /**
+     * Receive time of the frame returned by the last poll() or take()
+     * (or of the last frame taken by drainTo()).
+     */
+    public long lastStamp() { return lastStamp; }
+
+    /**
+     * Takes the next frame if there is one.
+     * @return The frame as an unsigned value (0 to 2^32-1), or -1 if the ring is empty.
+     */
+    public long poll() {
+        long h = headLocal;
+        if (h >= tailCache) {
+            tailCache = tail.get();
+            if (h >= tailCache) return -1L;
+        }
+        int frame = buf[(int) h & mask];
+        lastStamp = stamps[(int) h & mask];
+        headLocal = h + 1;
+        head.lazySet(h + 1);
+        return frame & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Takes up to 'max' waiting frames at once (does not wait if the ring is empty).
+     * Cheaper than poll() in a loop: the producer's counter is read once and
+     * ours is written once for the whole batch.
+     * @param frames Where the frames go (starting at 'off').
+     * @param rxStamps Where their receive times go (same positions).
+     * @return Number of frames taken (0 if the ring was empty).
+     */
+    public int drainTo(int[] frames, long[] rxStamps, int off, int max) {
+        long h = headLocal;
+        if (tailCache - h < max) tailCache = tail.get();
+        int n = (int) Math.min(tailCache - h, max);
+        if (n <= 0) return 0;
+
+        // Copy in at most two pieces (the part before and after the end of the array)
+        int start = (int) h & mask;
+        int first = Math.min(n, buf.length - start);
+        System.arraycopy(buf, start, frames, off, first);
+        System.arraycopy(stamps, start, rxStamps, off, first);
+        if (first < n) {
+            System.arraycopy(buf, 0, frames, off + first, n - first);
+            System.arraycopy(stamps, 0, rxStamps, off + first, n - first);
+        }
+        lastStamp = rxStamps[off + n - 1];
+        headLocal = h + n;
+        head.lazySet(h + n);
+        return n;
+    }
+
+    /**
+     * Takes the next frame, waiting with the WaitStrategy while the ring is empty.
+     */
+    public int take() throws InterruptedException {
+        int step = 0;
+        long f;
+        while ((f = poll()) < 0) {
+            if (Thread.interrupted()) throw new InterruptedException();
+            step = wait.idle(step);
+        }
+        return (int) f;
+    }
+
+    // --- INFO (safe from any thread) ---
+
+    // Number of frames waiting right now
+    public int size() {
+        long h = head.get();
+        return (int) (tail.get() - h);
+    }
+    public int capacity() { return buf.length; }
+    // Most frames that were ever waiting at once
+    public int highWater() { return highWater; }
+    public WaitStrategy waitStrategy() { return wait; }
+
+    @Override
+    public String toString() {
+        return "FrameRing(" + size() + "/" + buf.length + ", " + wait + ")";
+    }
+}
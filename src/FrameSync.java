@@ -0,0 +1,101 @@
+/**
+ * Finds 4-byte frames inside a raw byte stream.
+ * Bytes are pushed in one at a time into a sliding window. As soon as the
+ * window passes the checksum it is reported as a frame and the window starts over.
+ * If a byte gets lost on the radio, the window simply slides forward until
+ * the frames line up again (a "resync"), instead of staying misaligned forever.
+ */
+public class FrameSync {
+    private final ChecksumStrategy sum;
+
+    // The last 4 bytes, packed into one int: [byte0][byte1][byte2][byte3]
+    private int window = 0;
+    // How many bytes are currently in the window (0..4)
+    private int filled = 0;
+    // Bytes thrown away since the last good frame
+    private int skipped = 0;
+
+    // The last good frame and how many bytes we skipped to find it
+    private int frame = 0;
+    private int lastSkipped = 0;
+
+    // Counters for reporting (only the reader thread writes them, JMX reads them)
+    private volatile long frames = 0;
+    private volatile long resyncs = 0;
+    private volatile long skippedTotal = 0;
+
+    public FrameSync(ChecksumStrategy sum) {
+        if (sum == null) {
+            throw new IllegalArgumentException("sum must not be null");
+        }
+        this.sum = sum;
+    }
+
+    /**
+     * Adds one byte to the window.
+     * @param b The next byte from the stream.
+     * @return true if the window now holds a valid frame (read it with frame()).
+     */
+    public boolean push(byte b) {
+        // A full window that did not pass the checksum: drop its oldest byte
+        if (filled == 4) skipped++;
+        else filled++;
+        window = (window << 8) | (b & 0xFF);
+
+        if (filled < 4) return false;
+        if (!sum.valid((byte) (window >>> 24), (byte) (window >>> 16),
+                       (byte) (window >>> 8), (byte) window)) {
+            return false;
+        }
+
+        // Found a frame. Report it and start a fresh window.
+        frame = window;
+        lastSkipped = skipped;
+        if (skipped > 0) {
+            resyncs++;
+            skippedTotal += skipped;
+        }
+        frames++;
+        skipped = 0;
+        filled = 0;
+        return true;
+    }
+
+    /**
+     * Empties the window, e.g. after the port was reopened (the bytes in it
+     * belong to a frame that will never be finished).
+     */
+    public void reset() {
+        window = 0;
+        filled = 0;
+        skipped = 0;
+    }
+
+    /**
+     * The last valid frame, packed as [team][flags][value][checksum].
+     */
+    public int frame() { return frame; }
+
+    /**
+     * Copies the last valid frame into the given array (at least 4 bytes).
+     */
+    public void copyFrame(byte[] out) {
+        out[0] = (byte) (frame >>> 24);
+        out[1] = (byte) (frame >>> 16);
+        out[2] = (byte) (frame >>> 8);
+        out[3] = (byte) frame;
+    }
+
+    /**
+     * How many bytes were skipped right before the last frame.
+     * @return 0 if the stream was already in step.
+     */
+    public int lastSkipped() { return lastSkipped; }
+
+    // Total number of valid frames found
+    public long frames() { return frames; }
+    // How many times we had to slide the window to get back in step
+    public long resyncs() { return resyncs; }
+    // Total number of bytes thrown away
+    public long skippedBytes() { return skippedTotal; }
+}
@@ -0,0 +1,37 @@
+/**
+ * Where the game gets the time from.
+ * Live matches use the computer's clock (SystemClock). A replay uses a
+ * ManualClock that only moves when the replay says so, which makes every
+ * run of the same recording give exactly the same result.
+ * Everything that looks at the time or waits (the Game Engine, the Timeline,
+ * the HeartbeatFilter) goes through this interface.
+ */
+public interface GameClock {
+    /**
+     * Current time in milliseconds (only differences are meaningful).
+     */
+    long millis();
+
+    /**
+     * Current time in nanoseconds, on the same scale as System.nanoTime().
+     */
+    long nanos();
+
+    /**
+     * Runs a task once, after a delay on this clock.
+     * @return A handle to cancel the task before it runs.
+     */
+    Task schedule(Runnable task, long delayMs);
+
+    /**
+     * A task waiting to run.
+     */
+    interface Task {
+        void cancel();
+    }
+
+    /**
+     * The real clock, sharing the Timeline's scheduler thread.
+     */
+    static GameClock system() { return SystemClock.shared(); }
+}
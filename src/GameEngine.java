@@ -1,213 +1,364 @@
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class controls the rules of the game.
  * It tracks health, handles the start sequence, and processes hits.
+ * It works for any number of teams (team IDs 1..teams). All team state lives
+ * in arrays indexed by team ID, and hits are applied without a global lock,
+ * so a 16-car free-for-all costs no more per packet than a duel.
  */
 public class GameEngine implements PacketListener {
     // The tool we use to send messages to the cars
     private final CommandDispatcher tx;
-    
-    // Health for Team 1 and Team 2.
-    // We use "AtomicInteger" so we can change the numbers safely from different threads.
-    private final AtomicInteger hp1 = new AtomicInteger(100);
-    private final AtomicInteger hp2 = new AtomicInteger(100);
+
+    // Number of teams (team IDs go from 1 to teams)
+    private final int teams;
+
+    // Health per team (index = team ID, index 0 is not used).
+    // We use atomic arrays so we can change the numbers safely from different threads.
+    private final AtomicIntegerArray hp;
+    // How many teams still have health left in this match
+    private final AtomicInteger alive = new AtomicInteger();
 
     // --- SENSOR STATES ---
-    // Stores if the sensors currently see light or are covered
-    private volatile boolean light1 = false, light2 = false;
+    // Stores if the sensors currently see light (1) or are covered (0)
+    private final AtomicIntegerArray light;
+    // How many teams see light right now (so "all covered"/"all bright" is one check)
+    private final AtomicInteger brightCount = new AtomicInteger();
 
     // --- GAME STATES ---
     // Is the game currently active?
-    private volatile boolean running = false;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // Guards the start logic below and every fire mode change
+    private final Object armLock = new Object();
     // Did we see the "Cover" step of the start sequence?
-    private boolean seenBothDark = false;   
+    private boolean seenAllDark = false;
+    // Counts match starts and ends, so a late start step can tell its match is over (guarded by armLock)
+    private int matchNo = 0;
     // A timer to stop the game from restarting too quickly
-    private long gameOverTime = 0;          
+    private volatile long gameOverTime;
+
+    // --- WHAT WE LAST TOLD THE CARS (so it can be sent again after a reconnect) ---
+    // LED color code per team
+    private final AtomicIntegerArray led;
+    // Fire mode of all cars (0 = guns off)
+    private volatile int fireMode = 0;
 
     // --- SETTINGS ---
     // Timers to track the last time a car was hit (for invincibility)
-    private long lastHit1 = 0;
-    private long lastHit2 = 0;
+    private final AtomicLongArray lastHit;
     // How much damage one shot does
-    private static final int DAMAGE_PER_HIT = 10;      
+    private static final int DAMAGE_PER_HIT = 10;
     // How long a car stays invincible after getting hit (1 second)
-    private static final long INVINCIBILITY_MS = 1000;  
+    private static final long INVINCIBILITY_MS = 1000;
+    // How long after a game over before a new game can be armed
+    private static final long RESTART_COOLDOWN_MS = 5000;
 
     // A list of screens (like the Scoreboard) that want to know about game updates
     private final CopyOnWriteArrayList<GameStateListener> ls = new CopyOnWriteArrayList<>();
+    // The newest game state sent to the screens (replaced under snapLock)
+    private final Object snapLock = new Object();
+    private volatile GameSnapshot snapshot;
+    // Set while this thread applies a batch: the screens are updated once at the end
+    private final ThreadLocal<Batch> batch = ThreadLocal.withInitial(Batch::new);
+
+    // What happened during a batch, waiting to be published
+    private static final class Batch {
+        boolean active;
+        boolean changed;
+        String msg;
+    }
+
+    // Plays the LED/beep sequences, and the one that is playing right now (guarded by armLock)
+    private final Timeline timeline;
+    // Where the time comes from (the timeline's clock, so a replay controls both)
+    private final GameClock clock;
+    private Timeline.Cue show;
 
-    // Constructor: connects the engine to the message sender
+    // Constructor: connects the engine to the message sender (classic 2-team duel)
     public GameEngine(CommandDispatcher tx) {
+        this(tx, 2);
+    }
+
+    // Constructor for any number of teams
+    public GameEngine(CommandDispatcher tx, int teams) {
+        this(tx, teams, Timeline.shared());
+    }
+
+    // Constructor with a custom timeline for the LED/beep sequences (and its clock)
+    public GameEngine(CommandDispatcher tx, int teams, Timeline timeline) {
+        if (teams < 1 || teams > 254) {
+            throw new IllegalArgumentException("teams must be between 1 and 254");
+        }
         this.tx = tx;
+        this.teams = teams;
+        this.timeline = timeline;
+        this.clock = timeline.clock();
+        this.hp = new AtomicIntegerArray(teams + 1);
+        this.light = new AtomicIntegerArray(teams + 1);
+        this.lastHit = new AtomicLongArray(teams + 1);
+        this.led = new AtomicIntegerArray(teams + 1);
+        for (int t = 1; t <= teams; t++) hp.set(t, 100);
+        // The clock may start anywhere, so "no game over yet" is one cooldown ago
+        this.gameOverTime = clock.millis() - RESTART_COOLDOWN_MS;
+        this.snapshot = new GameSnapshot(0, copyHp(), copyBright(), "Waiting for start", false);
     }
 
-    // Add a screen to the list
-    public void addListener(GameStateListener l) { ls.add(l); }
+    // Add a screen to the list (it gets the current state right away)
+    public void addListener(GameStateListener l) {
+        ls.add(l);
+        l.onSnapshot(snapshot);
+    }
     // Remove a screen from the list
     public void removeListener(GameStateListener l) { ls.remove(l); }
 
+    // Number of teams in this engine
+    public int teams() { return teams; }
+    // Current health of one team
+    public int hp(int team) { return hp.get(team); }
+    // Is a match running right now?
+    public boolean isRunning() { return running.get(); }
+    // The newest game state (never changes, safe to keep)
+    public GameSnapshot snapshot() { return snapshot; }
+
     /**
      * This function runs every time we receive a message (packet) from a car.
      */
     @Override
-    public synchronized void onPacket(Packet p) {
-        long now = System.currentTimeMillis();
+    public void onPacket(Packet p) {
+        onPacket(p.team(), p.flags(), p.value());
+    }
+
+    /**
+     * Fast path used by the PacketBus: the same logic without a Packet object.
+     * Can be called from several threads at once.
+     */
+    @Override
+    public void onPacket(int team, int flags, int value) {
+        onPacket(team, flags, value, 0, 0L);
+    }
+
+    /**
+     * Same, with the receive time of the frame (used for latency statistics).
+     */
+    @Override
+    public void onPacket(int team, int flags, int value, int port, long rxNanos) {
+        // Ignore cars that are not part of this game
+        if (team < 1 || team > teams) return;
+        long now = clock.millis();
 
         // 1. Update our records of the light sensors
-        if (p.team() == 1) light1 = p.light();
-        else if (p.team() == 2) light2 = p.light();
+        int bright = Packet.isLight(flags) ? 1 : 0;
+        if (light.getAndSet(team, bright) != bright) {
+            brightCount.addAndGet(bright == 1 ? 1 : -1);
+        }
 
         // 2. LOGIC FOR STARTING THE GAME (If game is NOT running)
-        if (!running) {
-            // If the last game ended less than 5 seconds ago, do nothing
-            if (now - gameOverTime < 5000) return; 
-
-            // Step A: Arming Logic
-            // Both sensors must be covered (Dark)
-            if (!light1 && !light2) {
-                if (!seenBothDark) {
-                    seenBothDark = true;
-                    broadcast("ARMED! Uncover to start.");
-                }
-            }
-
-            // Step B: Start Logic
-            // Both sensors must become Uncovered (Bright) AFTER being Dark
-            if (seenBothDark && light1 && light2) {
-                startGame();
-                seenBothDark = false;
-            } 
-            else if (!seenBothDark) {
-                broadcast("Cover sensors to Arm...");
+        if (!running.get()) {
+            synchronized (armLock) {
+                if (!running.get()) arm(now);
             }
-            
-            // If one is covered and one is not, tell them to wait
-            if (seenBothDark && (!light1 || !light2)) {
-                broadcast("ARMED! Waiting for Flash...");
-            }
-
             // If the game did not start yet, stop here
-            if (!running) return;
+            if (!running.get()) return;
         }
 
         // 3. LOGIC FOR HITS (If game IS running)
-        if (p.ir()) {
-            if (p.team() == 1) {
-                // Check if Team 1 is still invincible from the last hit
-                if (now - lastHit1 > INVINCIBILITY_MS) {
-                    deductHp(1); // Reduce health
-                    lastHit1 = now; // Reset timer
-                }
-            } else if (p.team() == 2) {
-                // Check if Team 2 is still invincible
-                if (now - lastHit2 > INVINCIBILITY_MS) {
-                    deductHp(2);
-                    lastHit2 = now;
-                }
+        if (Packet.isIr(flags)) {
+            // Check if this team is still invincible from the last hit
+            long last = lastHit.get(team);
+            if (now - last > INVINCIBILITY_MS && lastHit.compareAndSet(team, last, now)) {
+                deductHp(team, rxNanos); // Reduce health
             }
         }
     }
 
-    // --- TRAFFIC CONTROL RESET ---
-    // Turns off all lights with a delay to ensure the message gets through
-    private void safeReset() {
+    /**
+     * Batch path: applies every packet in order (hits stay lock-free as above),
+     * but makes only one snapshot for the whole batch instead of one per change.
+     * Commands (beeps, colors) are still sent right away for every hit.
+     */
+    @Override
+    public void onPackets(PacketBatch packets) {
+        Batch b = batch.get();
+        b.active = true;
         try {
-            // 1. Send OFF command to everyone
-            tx.send(Commands.setRgb(Commands.TEAM_ALL, 0));
-            // 2. Wait 0.3 seconds to let the radio finish sending
-            Thread.sleep(300); 
-        } catch (Exception e) {}
+            for (int i = 0; i < packets.size(); i++) {
+                onPacket(packets.team(i), packets.flags(i), packets.value(i),
+                        packets.port(i), packets.rxNanos(i));
+            }
+        } finally {
+            b.active = false;
+            if (b.changed) {
+                String msg = b.msg;
+                b.changed = false;
+                b.msg = null;
+                publish(msg);
+            }
+        }
+    }
+
+    // --- ARMING LOGIC (called with armLock held) ---
+    private void arm(long now) {
+        // If the last game ended less than 5 seconds ago, do nothing
+        if (now - gameOverTime < RESTART_COOLDOWN_MS) return;
+
+        int b = brightCount.get();
+        boolean allDark = (b == 0);
+        boolean allBright = (b == teams);
+
+        // Step A: Arming Logic
+        // All sensors must be covered (Dark)
+        if (allDark && !seenAllDark) {
+            seenAllDark = true;
+            broadcast("ARMED! Uncover to start.");
+        }
+
+        // Step B: Start Logic
+        // All sensors must become Uncovered (Bright) AFTER being Dark
+        if (seenAllDark && allBright) {
+            startGame();
+            seenAllDark = false;
+        }
+        else if (!seenAllDark) {
+            broadcast("Cover sensors to Arm...");
+        }
+
+        // If some are covered and some are not, tell them to wait
+        if (seenAllDark && !allBright) {
+            broadcast("ARMED! Waiting for Flash...");
+        }
     }
 
     // --- START SEQUENCE ---
-    // This plays the light animation and then starts the game
+    // This plays the light animation and then starts the game.
+    // The steps run on the shared Timeline, so nothing here sleeps or creates a thread.
     private void startGame() {
-        running = true;
-        
-        // Reset health back to 100
-        hp1.set(100);
-        hp2.set(100);
-        notifyHp();
-
-        // We run this in a background thread so the main program doesn't freeze
-        new Thread(() -> {
-            try {
-                // A. Turn everything off first
-                safeReset(); 
+        // Reset health back to 100, and make sure nobody starts invincible
+        long noHit = clock.millis() - INVINCIBILITY_MS - 1;
+        for (int t = 1; t <= teams; t++) {
+            hp.set(t, 100);
+            lastHit.set(t, noHit);
+        }
+        alive.set(teams);
+        running.set(true);
+        publish(null);
 
+        show = timeline.replace(show, startSequence(++matchNo));
+    }
+
+    // The start animation: OFF, RED, GREEN, OFF, then team colors, chirp and guns on.
+    // The pauses after each OFF give the radio time to deliver it.
+    // @param match The matchNo this sequence starts.
+    private Timeline.Sequence startSequence(int match) {
+        return new Timeline.Sequence("start")
+                // A. Turn everything off first
+                .at(0,    () -> setRgb(Commands.TEAM_ALL, 0))
                 // B. Turn everyone RED
-                tx.send(Commands.setRgb(Commands.TEAM_ALL, 3));
-                Thread.sleep(600); // Wait 0.6 seconds
-                
+                .at(300,  () -> setRgb(Commands.TEAM_ALL, 3))
                 // C. Turn everyone GREEN
-                tx.send(Commands.setRgb(Commands.TEAM_ALL, 1));
-                Thread.sleep(600); 
-                
+                .at(900,  () -> setRgb(Commands.TEAM_ALL, 1))
                 // D. Flash OFF
-                safeReset(); 
-                
+                .at(1500, () -> setRgb(Commands.TEAM_ALL, 0))
                 // E. START THE GAME
                 // Turn lights to Green (Health 100) for each team specifically
-                tx.send(Commands.setRgb(1, 1)); // Team 1 Green
-                Thread.sleep(50); // Small wait to prevent traffic jam
-                tx.send(Commands.setRgb(2, 1)); // Team 2 Green
-                
-                // Turn on the Sound and Guns
-                tx.send(Commands.beep(Commands.TEAM_ALL, 3));
-                tx.send(Commands.fireMode(Commands.TEAM_ALL, 2));
-                
-                broadcast("GO! Match Started!");
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        }).start();
+                .at(1800, () -> {
+                    synchronized (armLock) {
+                        // The step may already be running when gameOver() cancels the sequence;
+                        // then the guns must stay off
+                        if (matchNo != match || !running.get()) return;
+                        for (int t = 1; t <= teams; t++) setRgb(t, 1);
+                        // Turn on the Sound and Guns
+                        tx.send(Commands.beep(Commands.TEAM_ALL, 3));
+                        setFireMode(2);
+                    }
+                    broadcast("GO! Match Started!");
+                });
     }
 
     // Reduces health and checks if the game is over
-    private void deductHp(int team) {
-        AtomicInteger hp = (team == 1) ? hp1 : hp2;
-        int current = hp.get();
-        
-        if (current > 0) {
-            // Subtract damage, but do not go below 0
-            hp.set(Math.max(0, current - DAMAGE_PER_HIT));
-            
-            // Play hit sound and update lights
-            tx.send(Commands.beep(team, 1));
-            colors();
-            notifyHp();
-            broadcast("Hit on Team " + team + "!");
-            
-            // If health is 0, end the game
-            if (hp.get() == 0) gameOver();
-        }
+    private void deductHp(int team, long rxNanos) {
+        // Subtract damage, but do not go below 0
+        int current, next;
+        do {
+            current = hp.get(team);
+            if (current <= 0) return;
+            next = Math.max(0, current - DAMAGE_PER_HIT);
+        } while (!hp.compareAndSet(team, current, next));
+
+        if (LatencyStats.ENABLED) LatencyStats.hitApplied(rxNanos);
+
+        // Play hit sound and update this team's light (the others did not change)
+        tx.send(Commands.beep(team, 1));
+        setRgb(team, code(next));
+        broadcast("Hit on Team " + team + "!");
+
+        // If only one team is left standing (or nobody in a solo game), end the game
+        if (next == 0 && alive.decrementAndGet() <= (teams > 1 ? 1 : 0)) gameOver();
     }
 
     // Ends the game session
     private void gameOver() {
-        if (!running) return;
-        running = false;
-        gameOverTime = System.currentTimeMillis(); // Start cooldown timer
-
-        // Disable Guns for safety
-        tx.send(Commands.fireMode(Commands.TEAM_ALL, 0));
-        
-        // Play "Die" sound for the loser
-        if (hp1.get() == 0) tx.send(Commands.beep(1, 2));
-        if (hp2.get() == 0) tx.send(Commands.beep(2, 2));
-        
-        colors(); // Update lights to show who lost
-        broadcast("GAME OVER! Winner: " + (hp1.get() > 0 ? "Team 1" : "Team 2"));
-        seenBothDark = false; // Reset the start logic
-    }
-
-    // Updates the LED colors based on current health
+        if (!running.compareAndSet(true, false)) return;
+
+        int winner = 0;
+        for (int t = 1; t <= teams; t++) if (hp.get(t) > 0) winner = t;
+
+        synchronized (armLock) {
+            gameOverTime = clock.millis(); // Start cooldown timer
+            seenAllDark = false; // Reset the start logic
+            matchNo++; // A start step that is still running sees this and stops
+
+            // Stop the start animation if it is still playing, so it cannot turn the guns back on
+            show = timeline.replace(show, null);
+
+            // Disable Guns for safety
+            setFireMode(0);
+
+            // Play "Die" sound for the losers and update lights to show who lost
+            show = timeline.replace(show, new Timeline.Sequence("game over")
+                    .at(0, () -> {
+                        for (int t = 1; t <= teams; t++) {
+                            if (hp.get(t) == 0) tx.send(Commands.beep(t, 2));
+                        }
+                        colors();
+                    }));
+        }
+        broadcast("GAME OVER! Winner: " + (winner > 0 ? "Team " + winner : "nobody"));
+    }
+
+    // Updates the LED colors of every team based on current health
     private void colors() {
-        tx.send(Commands.setRgb(1, code(hp1.get())));
-        tx.send(Commands.setRgb(2, code(hp2.get())));
+        for (int t = 1; t <= teams; t++) setRgb(t, code(hp.get(t)));
+    }
+
+    // Sends an LED color and remembers it (TEAM_ALL sets every team)
+    private void setRgb(int team, int code) {
+        if (team == Commands.TEAM_ALL) {
+            for (int t = 1; t <= teams; t++) led.set(t, code);
+        } else {
+            led.set(team, code);
+        }
+        tx.send(Commands.setRgb(team, code));
+    }
+
+    // Turns the guns of all cars on or off and remembers it
+    private void setFireMode(int mode) {
+        fireMode = mode;
+        tx.send(Commands.fireMode(Commands.TEAM_ALL, mode));
+    }
+
+    /**
+     * Sends the current fire mode and every team's LED color again.
+     * Commands sent while the link to the cars was down never arrived, so the
+     * SerialSupervisor calls this after it reconnected a port.
+     */
+    public void resendState() {
+        tx.send(Commands.fireMode(Commands.TEAM_ALL, fireMode));
+        for (int t = 1; t <= teams; t++) tx.send(Commands.setRgb(t, led.get(t)));
     }
 
     // Converts health number into a color code
@@ -217,34 +368,56 @@ public class GameEngine implements PacketListener {
         return 2;                // Yellow/Blue (Hurt)
     }
 
-    // Sends a text message to the Scoreboard Window
+    // Sends a text message (and the current health) to the Scoreboard Window
     private void broadcast(String msg) {
-        String t1Status = light1 ? "Dark" : "Bright";
-        String t2Status = light2 ? "Dark" : "Bright";
-
-        // We use HTML to format the text nicely on two lines
-        String status = "<html><div style='text-align:center;'>" 
-                        + msg 
-                        + "<br/>"
-                        + "<span style='font-size:10px; color:blue;'>" 
-                        + "[T1: " + t1Status + " | T2: " + t2Status + "]"
-                        + "</span></div></html>";
-        
-        for (var l : ls) l.onState(status);
-    }
-
-    // Tells the Scoreboard to update the progress bars
-    private void notifyHp() {
-        for (var l : ls) {
-            l.onHpUpdate(1, hp1.get());
-            l.onHpUpdate(2, hp2.get());
+        publish(msg);
+    }
+
+    /**
+     * Makes a new snapshot and gives it to every listener, unless nothing changed
+     * (the arming messages repeat on every heartbeat, so most calls stop here).
+     * @param msg The new status message, or null to keep the current one.
+     */
+    private void publish(String msg) {
+        Batch b = batch.get();
+        if (b.active) {
+            // Inside onPackets(): remember the newest message and publish at the end
+            b.changed = true;
+            if (msg != null) b.msg = msg;
+            return;
+        }
+        synchronized (snapLock) {
+            GameSnapshot last = snapshot;
+            String m = (msg != null) ? msg : last.message();
+            boolean run = running.get();
+            boolean same = m.equals(last.message()) && run == last.running();
+            for (int t = 1; same && t <= teams; t++) {
+                same = hp.get(t) == last.hp(t) && (light.get(t) == 1) == last.bright(t);
+            }
+            if (same) return;
+
+            GameSnapshot s = new GameSnapshot(last.version() + 1, copyHp(), copyBright(), m, run);
+            snapshot = s;
+            for (var l : ls) l.onSnapshot(s);
         }
     }
 
+    private int[] copyHp() {
+        int[] h = new int[teams + 1];
+        for (int t = 1; t <= teams; t++) h[t] = hp.get(t);
+        return h;
+    }
+
+    private boolean[] copyBright() {
+        boolean[] b = new boolean[teams + 1];
+        for (int t = 1; t <= teams; t++) b[t] = light.get(t) == 1;
+        return b;
+    }
+
     // Keeps the engine alive in the background
     public void runLoop() {
         try {
             while (true) { Thread.sleep(500); }
         } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
     }
-}
\ No newline at end of file
+}
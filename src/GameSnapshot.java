@@ -0,0 +1,61 @@
+/**
+ * The state of a match at one moment: health per team, which sensors see
+ * light, the status message and whether a match is running.
+ * A snapshot never changes after it is made, so the engine can hand the same
+ * object to the screen, the network and any other thread without copying.
+ * Every new snapshot of an engine has a higher version number.
+ */
+public final class GameSnapshot {
+    private final long version;
+    private final int[] hp;          // index = team ID, index 0 is not used
+    private final boolean[] bright;  // same indexing
+    private final String message;
+    private final boolean running;
+    // Built the first time someone asks for it
+    private String html;
+
+    GameSnapshot(long version, int[] hp, boolean[] bright, String message, boolean running) {
+        this.version = version;
+        this.hp = hp;
+        this.bright = bright;
+        this.message = message;
+        this.running = running;
+    }
+
+    public long version() { return version; }
+    public int teams() { return hp.length - 1; }
+    public int hp(int team) { return hp[team]; }
+    public boolean bright(int team) { return bright[team]; }
+    // The plain status message (like "GO! Match Started!")
+    public String message() { return message; }
+    public boolean running() { return running; }
+
+    /**
+     * The status text for the scoreboard: the message plus the sensor state of every team.
+     */
+    public String statusHtml() {
+        String s = html;
+        if (s == null) {
+            // We use HTML to format the text nicely on two lines
+            StringBuilder status = new StringBuilder("<html><div style='text-align:center;'>")
+                    .append(message)
+                    .append("<br/>")
+                    .append("<span style='font-size:10px; color:blue;'>[");
+            for (int t = 1; t < hp.length; t++) {
+                if (t > 1) status.append(" | ");
+                status.append("T").append(t).append(": ").append(bright[t] ? "Dark" : "Bright");
+            }
+            status.append("]</span></div></html>");
+            s = status.toString();
+            html = s;
+        }
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("GameSnapshot(v").append(version).append(", ");
+        for (int t = 1; t < hp.length; t++) sb.append("T").append(t).append("=").append(hp[t]).append(" ");
+        return sb.append(message).append(")").toString();
+    }
+}
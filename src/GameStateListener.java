@@ -9,4 +9,15 @@ public interface GameStateListener {
     
     // Called when the status text changes (like "Game Over")
     void onState(String text);
-}
\ No newline at end of file
+
+    /**
+     * Called with the whole game state every time something changes.
+     * The engine only calls this one. By default it passes the snapshot on to
+     * onHpUpdate() (for every team) and onState(), so simple listeners keep working.
+     * Busy listeners override it and just keep the newest snapshot.
+     */
+    default void onSnapshot(GameSnapshot s) {
+        for (int t = 1; t <= s.teams(); t++) onHpUpdate(t, s.hp(t));
+        onState(s.statusHtml());
+    }
+}
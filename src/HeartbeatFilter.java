@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/**
+ * A PacketBus that drops heartbeats which do not tell us anything new.
+ * Every car sends a heartbeat every 200ms even when nothing changed, and each
+ * one would go through every listener. This filter remembers the last flags
+ * per team and only forwards:
+ * - heartbeats whose flags (or value) changed,
+ * - every packet with the IR bit set, and every non-heartbeat packet (hits),
+ * - one heartbeat per team every keep-alive interval, so listeners still
+ *   see that the car is alive.
+ * Use it in place of a normal PacketBus between the Decoder and the listeners.
+ */
+public class HeartbeatFilter extends PacketBus {
+    // Marks a team we have not heard from yet
+    private static final int UNKNOWN = -1;
+
+    private final long keepAliveNanos;
+    private final GameClock clock;
+
+    // Last forwarded [flags][value] and time per team ID (0..255)
+    private final int[] lastState = new int[256];
+    private final long[] lastSent = new long[256];
+
+    // Counters (written only by the Decoder thread)
+    private volatile long forwarded = 0;
+    private volatile long suppressed = 0;
+
+    /**
+     * @param keepAliveMs Forward at least one heartbeat per team this often.
+     */
+    public HeartbeatFilter(long keepAliveMs) {
+        this(keepAliveMs, GameClock.system());
+    }
+
+    /**
+     * @param keepAliveMs Forward at least one heartbeat per team this often.
+     * @param clock Where the time comes from (a ManualClock for replays).
+     */
+    public HeartbeatFilter(long keepAliveMs, GameClock clock) {
+        if (keepAliveMs <= 0) {
+            throw new IllegalArgumentException("keepAliveMs must be positive");
+        }
+        if (clock == null) {
+            throw new IllegalArgumentException("clock must not be null");
+        }
+        this.keepAliveNanos = keepAliveMs * 1_000_000L;
+        this.clock = clock;
+        Arrays.fill(lastState, UNKNOWN);
+    }
+
+    @Override
+    public void publish(Packet p) {
+        if (pass(p.team(), p.flags(), p.value())) super.publish(p);
+    }
+
+    // The 3-argument publish() ends up here as well
+    @Override
+    public void publish(int team, int flags, int value, int port, long rxNanos) {
+        if (pass(team, flags, value)) super.publish(team, flags, value, port, rxNanos);
+    }
+
+    /**
+     * Drops the uninteresting heartbeats from the batch itself, then sends on what is left.
+     */
+    @Override
+    public void publish(PacketBatch batch) {
+        int kept = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (pass(batch.team(i), batch.flags(i), batch.value(i))) {
+                if (kept != i) batch.move(i, kept);
+                kept++;
+            }
+        }
+        batch.truncate(kept);
+        super.publish(batch);
+    }
+
+    /**
+     * Decides if a packet is worth sending on.
+     */
+    private boolean pass(int team, int flags, int value) {
+        long now = clock.nanos();
+        int t = team & 0xFF;
+        int state = (flags & 0xFF) << 8 | (value & 0xFF);
+
+        boolean send = Packet.isIr(flags)
+                || !Packet.isHb(flags)
+                || state != lastState[t]
+                || now - lastSent[t] >= keepAliveNanos;
+
+        if (send) {
+            lastState[t] = state;
+            lastSent[t] = now;
+            forwarded++;
+        } else {
+            suppressed++;
+        }
+        return send;
+    }
+
+    // Number of packets sent on to the listeners
+    public long forwarded() { return forwarded; }
+    // Number of heartbeats dropped because nothing changed
+    public long suppressed() { return suppressed; }
+
+    @Override
+    public String toString() {
+        return "HeartbeatFilter(forwarded=" + forwarded + ", suppressed=" + suppressed + ")";
+    }
+}
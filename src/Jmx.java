@@ -0,0 +1,25 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Small helper to publish our statistics objects over JMX.
+ */
+public final class Jmx {
+    private Jmx() {}
+
+    /**
+     * Registers an MBean, replacing one with the same name.
+     * Failures are printed but never stop the game.
+     */
+    public static void register(Object mbean, String name) {
+        try {
+            ObjectName on = new ObjectName(name);
+            var server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(on)) server.unregisterMBean(on);
+            server.registerMBean(mbean, on);
+        } catch (JMException e) {
+            AsyncLog.error("Could not register MBean " + name + ": " + e.getMessage());
+        }
+    }
+}
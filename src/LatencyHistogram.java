@@ -0,0 +1,107 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how often each latency (in nanoseconds) happened, HDR-style:
+ * the buckets get wider as the values get bigger, so every value is kept
+ * with about 3% precision from 1ns up to hours, in a fixed array of counters.
+ * Recording is one array increment (no locks, no objects), and it is safe
+ * from any number of threads.
+ */
+public class LatencyHistogram {
+    // 32 buckets per power of two
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Adds one value. Negative values (clock oddities) count as 0.
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(index(Math.max(0, nanos)));
+    }
+
+    // Values below 2*SUB_COUNT get their own bucket; above that, SUB_COUNT buckets per power of two
+    private static int index(long v) {
+        if (v < 2 * SUB_COUNT) return (int) v;
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - SUB_BITS;
+        int top = (int) (v >>> shift);        // between SUB_COUNT and 2*SUB_COUNT-1
+        return (shift + 1) * SUB_COUNT + (top - SUB_COUNT);
+    }
+
+    // The biggest value that lands in a bucket
+    private static long highest(int idx) {
+        if (idx < 2 * SUB_COUNT) return idx;
+        int shift = idx / SUB_COUNT - 1;
+        long top = idx % SUB_COUNT + SUB_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Number of values recorded.
+     */
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) n += counts.get(i);
+        return n;
+    }
+
+    /**
+     * The value below which the given share of all values lies.
+     * @param percentile Between 0 and 100 (e.g. 99.9).
+     * @return The value in nanoseconds, or 0 if nothing was recorded.
+     */
+    public long percentile(double percentile) {
+        long[] snap = snapshot();
+        long total = 0;
+        for (long c : snap) total += c;
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snap[i];
+            if (seen >= rank) return highest(i);
+        }
+        return max();
+    }
+
+    /**
+     * The biggest value recorded (to bucket precision).
+     */
+    public long max() {
+        for (int i = BUCKETS - 1; i >= 0; i--) if (counts.get(i) != 0) return highest(i);
+        return 0;
+    }
+
+    /**
+     * Forgets all values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+    }
+
+    private long[] snapshot() {
+        long[] snap = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) snap[i] = counts.get(i);
+        return snap;
+    }
+
+    public String name() { return name; }
+
+    /**
+     * One line summary in microseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format("%-12s n=%-9d p50=%9.1fus p99=%9.1fus p99.9=%9.1fus max=%9.1fus",
+                name, count(), percentile(50) / 1e3, percentile(99) / 1e3,
+                percentile(99.9) / 1e3, max() / 1e3);
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Latency histograms for every stage between a byte arriving at the dongle
+ * and the hit beep leaving the PC:
+ *
+ *   radio    bytes arrived at the port  -> SerialPortHandle.read() returned them
+ *   ring     Reader stamped the frame   -> Decoder took it from the ring
+ *   parse    PacketParser.parseFrame() for one batch of frames
+ *   publish  PacketBus.publish() of one batch through all listeners
+ *   engine   Reader stamp               -> GameEngine applied the hit
+ *   txQueue  hit beep queued            -> hit beep written to the port
+ *   hitToTx  Reader stamp of the hit    -> hit beep written to the port
+ *
+ * Turned on with -Dlatency=true. The switch is a static final constant, so
+ * when it is off the JIT removes the timing code completely.
+ */
+public final class LatencyStats {
+    public static final boolean ENABLED = Boolean.getBoolean("latency");
+
+    public static final LatencyHistogram RADIO = new LatencyHistogram("radio");
+    public static final LatencyHistogram RING = new LatencyHistogram("ring");
+    public static final LatencyHistogram PARSE = new LatencyHistogram("parse");
+    public static final LatencyHistogram PUBLISH = new LatencyHistogram("publish");
+    public static final LatencyHistogram ENGINE = new LatencyHistogram("engine");
+    public static final LatencyHistogram TX_QUEUE = new LatencyHistogram("txQueue");
+    public static final LatencyHistogram HIT_TO_TX = new LatencyHistogram("hitToTx");
+
+    private static final LatencyHistogram[] ALL = { RADIO, RING, PARSE, PUBLISH, ENGINE, TX_QUEUE, HIT_TO_TX };
+
+    // Receive stamp of the hit being applied on this thread, picked up when its beep is queued
+    private static final ThreadLocal<long[]> HIT_RX = ThreadLocal.withInitial(() -> new long[1]);
+
+    private LatencyStats() {}
+
+    /**
+     * Called by the engine when it applies a hit.
+     * @param rxNanos Reader stamp of the IR packet (0 if unknown).
+     */
+    public static void hitApplied(long rxNanos) {
+        if (rxNanos == 0) return;
+        ENGINE.record(System.nanoTime() - rxNanos);
+        HIT_RX.get()[0] = rxNanos;
+    }
+
+    /**
+     * Called when the hit beep is queued or sent directly (on the same thread as hitApplied).
+     * @return The hit's receive stamp, or 0 if there was none.
+     */
+    public static long takeHitRx() {
+        long[] slot = HIT_RX.get();
+        long rx = slot[0];
+        slot[0] = 0;
+        return rx;
+    }
+
+    /**
+     * All stages, one line each.
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder("Latency per stage" + (ENABLED ? "" : " (off, use -Dlatency=true)") + ":\n");
+        for (LatencyHistogram h : ALL) sb.append("  ").append(h).append('\n');
+        return sb.toString();
+    }
+
+    public static void reset() {
+        for (LatencyHistogram h : ALL) h.reset();
+    }
+}
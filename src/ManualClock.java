@@ -0,0 +1,92 @@
+import java.util.PriorityQueue;
+
+/**
+ * A clock that only moves when advanceTo() is called.
+ * Scheduled tasks run inside advanceTo(), on the caller's thread, in time
+ * order (tasks with the same time run in the order they were scheduled).
+ * While a task runs, the clock shows that task's time.
+ * Used by the ReplayDriver to re-run a recorded match exactly, at any speed.
+ */
+public class ManualClock implements GameClock {
+    // A task waiting for its time (ordered by time, then by scheduling order)
+    private static final class Entry implements Task, Comparable<Entry> {
+        final long due;
+        final long seq;
+        final Runnable task;
+        boolean cancelled = false;
+
+        Entry(long due, long seq, Runnable task) {
+            this.due = due;
+            this.seq = seq;
+            this.task = task;
+        }
+
+        @Override
+        public void cancel() { cancelled = true; }
+
+        @Override
+        public int compareTo(Entry o) {
+            int c = Long.compare(due, o.due);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private long now;
+    private long seq = 0;
+
+    /**
+     * @param startNanos The time the clock starts at.
+     */
+    public ManualClock(long startNanos) {
+        this.now = startNanos;
+    }
+
+    @Override
+    public synchronized long millis() { return now / 1_000_000; }
+
+    @Override
+    public synchronized long nanos() { return now; }
+
+    @Override
+    public synchronized Task schedule(Runnable task, long delayMs) {
+        Entry e = new Entry(now + Math.max(0, delayMs) * 1_000_000, seq++, task);
+        queue.add(e);
+        return e;
+    }
+
+    /**
+     * Moves the clock forward, running every task that is due on the way.
+     * Going backwards is ignored (the clock never runs back).
+     */
+    public void advanceTo(long nanos) {
+        while (true) {
+            Entry e;
+            synchronized (this) {
+                e = queue.peek();
+                if (e == null || e.due > nanos) {
+                    if (nanos > now) now = nanos;
+                    return;
+                }
+                queue.poll();
+                if (e.cancelled) continue;
+                if (e.due > now) now = e.due;
+            }
+            // Run outside the lock, so the task can read the clock and schedule more
+            e.task.run();
+        }
+    }
+
+    /**
+     * Moves the clock forward by some milliseconds.
+     */
+    public void advanceMillis(long ms) {
+        advanceTo(nanos() + ms * 1_000_000);
+    }
+
+    // Number of tasks waiting (cancelled ones included until their time comes)
+    public synchronized int pending() { return queue.size(); }
+
+    @Override
+    public String toString() { return "ManualClock(" + nanos() + ")"; }
+}
@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only recording of all radio traffic, for replaying a match later.
+ * Every received frame and every sent command frame becomes one fixed-size
+ * 16-byte record:
+ *   [nanoTime: 8][direction: 1][port: 1][unused: 2][frame: 4]
+ * Records go straight into a memory-mapped file, so adding one is a few
+ * stores into memory (no system call, no objects). When a file is full the
+ * journal rolls over to the next one: name-0000.bcj, name-0001.bcj, ...
+ * A record with direction 0 marks the end of the data in a file.
+ */
+public class MatchJournal implements AutoCloseable {
+    // Record directions
+    public static final int RX = 1;
+    public static final int TX = 2;
+
+    public static final int RECORD_BYTES = 16;
+    // First record slot of every file holds the header: "BCJ1", record size, creation time
+    private static final int MAGIC = 0x42434A31;
+    private static final int HEADER_BYTES = RECORD_BYTES;
+    // Default file size: 16 MB = about 1 million records
+    private static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    private final Path dir;
+    private final String name;
+    private final int segmentBytes;
+
+    // --- CURRENT FILE (guarded by 'this') ---
+    private MappedByteBuffer buf;
+    private int segment = -1;
+    private long records = 0;
+    private boolean closed = false;
+
+    public MatchJournal(Path dir, String name) {
+        this(dir, name, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Creates the directory (if needed) and the first file.
+     * @param dir Where the files go.
+     * @param name File name prefix.
+     * @param segmentBytes Size of each file (rounded down to whole records).
+     */
+    public MatchJournal(Path dir, String name, int segmentBytes) {
+        if (dir == null || name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("dir and name must be set");
+        }
+        if (segmentBytes < HEADER_BYTES + RECORD_BYTES) {
+            throw new IllegalArgumentException("segmentBytes must hold at least one record");
+        }
+        this.dir = dir;
+        this.name = name;
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_BYTES;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal directory " + dir, e);
+        }
+        roll();
+    }
+
+    /**
+     * Adds one record. Safe to call from several threads.
+     * @param direction RX or TX.
+     * @param port Index of the dongle.
+     * @param frame The packed 4-byte frame.
+     * @param nanos System.nanoTime() of the frame.
+     */
+    public synchronized void append(int direction, int port, int frame, long nanos) {
+        if (closed) return;
+        if (buf.remaining() < RECORD_BYTES) roll();
+        buf.putLong(nanos);
+        buf.put((byte) direction);
+        buf.put((byte) port);
+        buf.putShort((short) 0);
+        buf.putInt(frame);
+        records++;
+    }
+
+    // Maps the next file and writes its header (called with the lock held)
+    private void roll() {
+        segment++;
+        Path file = segmentPath(dir, name, segment);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            buf = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create journal file " + file, e);
+        }
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC);
+        buf.putInt(RECORD_BYTES);
+        buf.putLong(System.currentTimeMillis());
+    }
+
+    // Number of records written so far
+    public synchronized long records() { return records; }
+    // Number of files used so far
+    public synchronized int segments() { return segment + 1; }
+
+    /**
+     * Flushes the current file to disk and stops recording.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        buf.force();
+    }
+
+    @Override
+    public String toString() {
+        return "MatchJournal(" + dir.resolve(name) + ", records=" + records() + ", files=" + segments() + ")";
+    }
+
+    // --- READING ---
+
+    /**
+     * Receives the records of a journal, in the order they were written.
+     */
+    public interface Visitor {
+        void record(long nanos, int direction, int port, int frame);
+    }
+
+    /**
+     * Reads every file of a journal.
+     * @return Number of records read.
+     */
+    public static long read(Path dir, String name, Visitor v) {
+        long n = 0;
+        for (int seg = 0; ; seg++) {
+            Path file = segmentPath(dir, name, seg);
+            if (!Files.exists(file)) return n;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                b.order(ByteOrder.LITTLE_ENDIAN);
+                if (b.remaining() < HEADER_BYTES || b.getInt() != MAGIC || b.getInt() != RECORD_BYTES) {
+                    throw new IllegalStateException("Not a match journal: " + file);
+                }
+                b.getLong(); // creation time
+                while (b.remaining() >= RECORD_BYTES) {
+                    long nanos = b.getLong();
+                    int direction = b.get();
+                    int port = b.get() & 0xFF;
+                    b.getShort();
+                    int frame = b.getInt();
+                    if (direction == 0) break; // end of data
+                    v.record(nanos, direction, port, frame);
+                    n++;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read journal file " + file, e);
+            }
+        }
+    }
+
+    private static Path segmentPath(Path dir, String name, int segment) {
+        return dir.resolve(String.format("%s-%04d.bcj", name, segment));
+    }
+}
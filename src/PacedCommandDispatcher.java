@@ -0,0 +1,43 @@
+/**
+ * A CommandDispatcher that does not write to the port directly.
+ * Commands go into a TransmitQueue, which sends them in priority order,
+ * paced to the speed of the radio link, and skips LED/fire mode commands
+ * that would not change anything.
+ * This means the Game Engine never has to sleep to avoid "traffic jams".
+ */
+public class PacedCommandDispatcher extends CommandDispatcher implements AutoCloseable {
+    private final TransmitQueue queue;
+
+    /**
+     * @param serial The port to send to.
+     * @param baud Link speed used for pacing (9600 for the XBee dongles).
+     */
+    public PacedCommandDispatcher(SerialEndpoint serial, int baud) {
+        super(serial);
+        this.queue = new TransmitQueue(serial, baud);
+    }
+
+    /**
+     * Puts the command in the send queue and returns right away.
+     */
+    @Override
+    public void send(Command c) {
+        queue.submit(c.toBytes());
+    }
+
+    /**
+     * Records every sent frame in a journal (port 0). Null turns it off.
+     */
+    public void setJournal(MatchJournal journal) { queue.setJournal(journal, 0); }
+
+    /**
+     * The queue behind this dispatcher (for statistics).
+     */
+    public TransmitQueue queue() { return queue; }
+
+    /**
+     * Stops the writer thread.
+     */
+    @Override
+    public void close() { queue.close(); }
+}
@@ -1,23 +1,41 @@
 /**
  * Immutable data carrier representing a packet received from the hardware.
  * Decodes bit flags into boolean states.
+ * The static helpers do the same checks on a raw flags byte, for the fast
+ * path that does not create Packet objects.
  */
 public record Packet(int team, int flags, int value) {
+    // Flag bits, same values as the LilyPad firmware
+    public static final int FLAG_IR    = 0x01;
+    public static final int FLAG_LDR   = 0x02;
+    public static final int FLAG_LIGHT = 0x04;
+    public static final int FLAG_HB    = 0x08;
+
     /**
      * Checks Bit 0 (0x01)
      * @return true if IR signal is detected (Hit).
      */
-    public boolean ir()    { return (flags & 0x01) != 0; } 
+    public boolean ir()    { return isIr(flags); } 
 
     /**
      * Checks Bit 1 (0x02)
      * Debugging flag for LDR edge detection.
      */
-    public boolean ldr()   { return (flags & 0x02) != 0; } 
+    public boolean ldr()   { return (flags & FLAG_LDR) != 0; } 
 
     /**
      * Checks Bit 2 (0x04)
      * @return true if sensor is detecting light (Bright), false if Covered (Dark).
      */
-    public boolean light() { return (flags & 0x04) != 0; } 
-}
\ No newline at end of file
+    public boolean light() { return isLight(flags); } 
+
+    /**
+     * Checks Bit 3 (0x08)
+     * @return true if this is the regular heartbeat (sent every 200ms).
+     */
+    public boolean hb()    { return isHb(flags); }
+
+    public static boolean isIr(int flags)    { return (flags & FLAG_IR) != 0; }
+    public static boolean isLight(int flags) { return (flags & FLAG_LIGHT) != 0; }
+    public static boolean isHb(int flags)    { return (flags & FLAG_HB) != 0; }
+}
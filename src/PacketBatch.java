@@ -0,0 +1,74 @@
+/**
+ * A group of packets handed to the listeners in one call (see PacketListener.onPackets).
+ * It is a flyweight: the Decoder fills the same object again for every batch,
+ * and the packets live in plain arrays, so a batch creates no objects.
+ * Listeners read it with team(i), flags(i), ... and must not keep it after
+ * the call returns (copy what you need).
+ */
+public final class PacketBatch {
+    // Packed [port][team][flags][value] and receive time per packet
+    private final int[] packets;
+    private final long[] stamps;
+    private int size = 0;
+
+    /**
+     * @param capacity Most packets one batch can hold.
+     */
+    public PacketBatch(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.packets = new int[capacity];
+        this.stamps = new long[capacity];
+    }
+
+    // --- READING ---
+
+    public int size() { return size; }
+    public int capacity() { return packets.length; }
+    public boolean isEmpty() { return size == 0; }
+
+    public int team(int i)  { return (packets[i] >>> 16) & 0xFF; }
+    public int flags(int i) { return (packets[i] >>> 8) & 0xFF; }
+    public int value(int i) { return packets[i] & 0xFF; }
+    // Index of the dongle the packet came from
+    public int port(int i)  { return packets[i] >>> 24; }
+    // System.nanoTime() when the frame was read (0 if unknown)
+    public long rxNanos(int i) { return stamps[i]; }
+
+    // --- FILLING ---
+
+    /**
+     * Adds a packet at the end.
+     * @return false if the batch is full.
+     */
+    public boolean add(int team, int flags, int value, int port, long rxNanos) {
+        if (size == packets.length) return false;
+        packets[size] = (port & 0xFF) << 24 | (team & 0xFF) << 16 | (flags & 0xFF) << 8 | (value & 0xFF);
+        stamps[size] = rxNanos;
+        size++;
+        return true;
+    }
+
+    /**
+     * Copies packet 'from' to position 'to' (to <= from). Used to drop packets in place:
+     * walk the batch, move the ones you keep to the front, then call truncate().
+     */
+    public void move(int from, int to) {
+        packets[to] = packets[from];
+        stamps[to] = stamps[from];
+    }
+
+    // Keeps only the first n packets
+    public void truncate(int n) {
+        if (n < 0 || n > size) throw new IllegalArgumentException("n must be between 0 and " + size);
+        size = n;
+    }
+
+    public void clear() { size = 0; }
+
+    @Override
+    public String toString() {
+        return "PacketBatch(" + size + "/" + packets.length + ")";
+    }
+}
@@ -1,27 +1,60 @@
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Sends received packets to everyone who is listening (like the Game Engine).
  * Thread-safe so multiple parts of the app can read packets at the same time.
+ * The listener list is a plain array that is copied on every change, so
+ * publishing does not create any objects.
+ * Slow listeners can be added with addAsync(), so they get their own queue
+ * and thread and never delay the others.
  */
 public class PacketBus {
     // A list of all classes that want to receive packets
-    private final CopyOnWriteArrayList<PacketListener> ls = new CopyOnWriteArrayList<>();
+    private volatile PacketListener[] ls = new PacketListener[0];
+    // Number of exceptions thrown by listeners
+    private final AtomicLong listenerErrors = new AtomicLong();
 
     /**
      * Adds a listener to the list.
      * @param l The class that wants to receive updates.
      */
-    public void add(PacketListener l) {
-        ls.add(l);
+    public synchronized void add(PacketListener l) {
+        PacketListener[] next = Arrays.copyOf(ls, ls.length + 1);
+        next[ls.length] = l;
+        ls = next;
     }
 
     /**
-     * Removes a listener from the list.
+     * Adds a listener that runs on its own thread, behind a bounded queue.
+     * @param l The (slow) class that wants to receive updates.
+     * @param capacity How many packets may wait for it.
+     * @param overflow What to do when its queue is full.
+     * @return The wrapper (for statistics).
+     */
+    public AsyncPacketListener addAsync(PacketListener l, int capacity, AsyncPacketListener.Overflow overflow) {
+        AsyncPacketListener async = new AsyncPacketListener(l, capacity, overflow);
+        add(async);
+        return async;
+    }
+
+    /**
+     * Removes a listener from the list (also one added with addAsync, whose thread is stopped).
      * @param l The class to remove.
      */
-    public void remove(PacketListener l) {
-        ls.remove(l);
+    public synchronized void remove(PacketListener l) {
+        PacketListener[] cur = ls;
+        for (int i = 0; i < cur.length; i++) {
+            boolean async = cur[i] instanceof AsyncPacketListener;
+            if (cur[i].equals(l) || (async && ((AsyncPacketListener) cur[i]).target().equals(l))) {
+                if (async) ((AsyncPacketListener) cur[i]).close();
+                PacketListener[] next = new PacketListener[cur.length - 1];
+                System.arraycopy(cur, 0, next, 0, i);
+                System.arraycopy(cur, i + 1, next, i, cur.length - i - 1);
+                ls = next;
+                return;
+            }
+        }
     }
 
     /**
@@ -29,15 +62,61 @@ public class PacketBus {
      * @param p The packet to send.
      */
     public void publish(Packet p) {
-        for (var l : ls) {
+        for (PacketListener l : ls) {
             try {
                 l.onPacket(p);
             } catch (Throwable t) {
-                // Keep running even if one listener fails
-                System.err.println("Error in PacketListener " +
-                        l.getClass().getSimpleName() + ":");
-                t.printStackTrace();
+                failed(l, t);
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Fast path: sends the packet fields to all listeners without creating a Packet.
+     * Listeners that only implement onPacket(Packet) get one built for them.
+     */
+    public void publish(int team, int flags, int value) {
+        publish(team, flags, value, 0, 0L);
+    }
+
+    /**
+     * Fast path with the source port and receive time (used by the Decoder).
+     * @param port Index of the dongle the frame came from.
+     * @param rxNanos System.nanoTime() when the bytes were read.
+     */
+    public void publish(int team, int flags, int value, int port, long rxNanos) {
+        for (PacketListener l : ls) {
+            try {
+                l.onPacket(team, flags, value, port, rxNanos);
+            } catch (Throwable t) {
+                failed(l, t);
+            }
+        }
+    }
+
+    /**
+     * Batch path (used by the Decoder): gives the whole batch to every listener in one call.
+     * A listener that throws misses the rest of the batch; the others still get all of it.
+     * Subclasses (like the HeartbeatFilter) may remove packets from the batch.
+     */
+    public void publish(PacketBatch batch) {
+        if (batch.isEmpty()) return;
+        for (PacketListener l : ls) {
+            try {
+                l.onPackets(batch);
+            } catch (Throwable t) {
+                failed(l, t);
+            }
+        }
+    }
+
+    // Number of exceptions thrown by listeners so far
+    public long listenerErrors() { return listenerErrors.get(); }
+
+    // Keep running even if one listener fails
+    private void failed(PacketListener l, Throwable t) {
+        listenerErrors.incrementAndGet();
+        AsyncLog.error("Error in PacketListener " +
+                l.getClass().getSimpleName() + ":", t);
+    }
+}
@@ -1,43 +1,186 @@
-import java.util.concurrent.BlockingQueue;
+import java.util.Arrays;
 
 /**
- * A background task that processes the raw bytes from the queue.
+ * A background task that processes the raw frames from the ring buffer.
  * It uses the Parser to check if the data is valid, then notifies the game.
+ *
+ * Frames are handled in batches: every time it wakes up, the Decoder takes
+ * everything that is waiting (up to MAX_BATCH per ring), parses it and hands
+ * the packets to the Bus in one PacketBatch. Under a burst this means one
+ * wake-up and one pass through the listeners for many frames instead of one
+ * per frame.
+ *
+ * With several dongles there is one Reader and one ring per dongle, and this
+ * Decoder merges them: inside a batch the frames are put in order of their
+ * receive time. Each ring keeps its frames in order and a car only talks
+ * through one radio, so the packets of every team stay in order.
  */
 public class PacketDecoder implements Runnable {
-    private final BlockingQueue<byte[]> inQ;
+    private final FrameRing[] rings;
     private final PacketParser parser;
     private final PacketBus bus;
+    private final WaitStrategy wait;
+    // Records every raw frame (null = off)
+    private volatile MatchJournal journal;
 
-    public PacketDecoder(BlockingQueue<byte[]> inQ, PacketParser parser, PacketBus bus) {
-        this.inQ = inQ;
+    // Most frames taken from one ring per batch
+    static final int MAX_BATCH = 256;
+    // Frames taken from each ring and not merged yet (Decoder thread only)
+    private final int[][] frames;
+    private final long[][] stamps;
+    private final int[] count;
+    private final int[] pos;
+    // The packets of the current batch (reused)
+    private final PacketBatch batch;
+
+    public PacketDecoder(FrameRing inQ, PacketParser parser, PacketBus bus) {
+        this(parser, bus, inQ);
+    }
+
+    /**
+     * Decoder for several dongles. The index of a ring is its port number.
+     * All rings must share ONE WaitStrategy, so any Reader can wake us up.
+     */
+    public PacketDecoder(PacketParser parser, PacketBus bus, FrameRing... rings) {
+        if (rings == null || rings.length == 0) {
+            throw new IllegalArgumentException("At least one FrameRing is required");
+        }
+        for (FrameRing r : rings) {
+            if (r == null || r.waitStrategy() != rings[0].waitStrategy()) {
+                throw new IllegalArgumentException("All rings must share one WaitStrategy");
+            }
+        }
+        this.rings = rings.clone();
         this.parser = parser;
         this.bus = bus;
+        this.wait = rings[0].waitStrategy();
+        this.frames = new int[rings.length][MAX_BATCH];
+        this.stamps = new long[rings.length][MAX_BATCH];
+        this.count = new int[rings.length];
+        this.pos = new int[rings.length];
+        this.batch = new PacketBatch(rings.length * MAX_BATCH);
     }
 
+    /**
+     * Records every received frame (valid or not) in a journal. Null turns it off.
+     */
+    public void setJournal(MatchJournal journal) { this.journal = journal; }
+
     /**
      * The main loop for this thread.
-     * 1. Takes a byte array from the queue (waits if empty).
-     * 2. Asks the Parser if the data is valid (checks math).
-     * 3. If valid, publishes the Packet to the Bus.
+     * 1. Takes every waiting frame from every ring (waits if all are empty).
+     * 2. Journals them, then lets the Parser drop the invalid ones (checks math),
+     *    one whole ring batch per call.
+     * 3. Publishes all valid packets, oldest first, with port and receive time,
+     *    to the Bus in one batch (no objects created).
      */
     @Override
     public void run() {
         try {
+            int step = 0;
             while (true) {
-                // Blocks (waits) here until data arrives in the queue
-                byte[] f = inQ.take();
+                if (drain() == 0) {
+                    // Waits here until data arrives in any ring
+                    if (Thread.interrupted()) throw new InterruptedException();
+                    step = wait.idle(step);
+                    continue;
+                }
+                step = 0;
+
                 try {
-                    // Parse the bytes and publish if valid
-                    parser.parse(f).ifPresent(bus::publish);
+                    decode();
                 } catch (Throwable t) {
-                    System.err.println("Error while decoding/publishing packet:");
-                    t.printStackTrace();
+                    AsyncLog.error("Error while decoding/publishing packets:", t);
                 }
             }
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            System.err.println("PacketDecoder interrupted, exiting.");
+            AsyncLog.error("PacketDecoder interrupted, exiting.");
+        }
+    }
+
+    /**
+     * Takes the waiting frames out of every ring.
+     * @return How many frames were taken in total.
+     */
+    private int drain() {
+        int total = 0;
+        for (int i = 0; i < rings.length; i++) {
+            count[i] = rings[i].drainTo(frames[i], stamps[i], 0, MAX_BATCH);
+            pos[i] = 0;
+            total += count[i];
+        }
+        return total;
+    }
+
+    /**
+     * Journals the drained frames, checks them ring by ring and publishes the
+     * valid ones in receive order.
+     */
+    private void decode() {
+        batch.clear();
+        MatchJournal j = journal;
+        long t0 = LatencyStats.ENABLED ? System.nanoTime() : 0;
+
+        // The journal keeps every frame, so it goes before the checksum filter
+        if (j != null) journal(j);
+        for (int i = 0; i < rings.length; i++) {
+            if (count[i] > 0) count[i] = parser.filterValid(frames[i], stamps[i], 0, count[i]);
+        }
+
+        int port;
+        while ((port = next()) >= 0) {
+            int frame = frames[port][pos[port]];
+            long rxNanos = stamps[port][pos[port]];
+            pos[port]++;
+            if (LatencyStats.ENABLED) LatencyStats.RING.record(t0 - rxNanos);
+            batch.add(frame >>> 24, (frame >>> 16) & 0xFF, (frame >>> 8) & 0xFF, port, rxNanos);
+        }
+
+        long t1 = 0;
+        if (LatencyStats.ENABLED) {
+            t1 = System.nanoTime();
+            LatencyStats.PARSE.record(t1 - t0);
+        }
+        bus.publish(batch);
+        if (LatencyStats.ENABLED) LatencyStats.PUBLISH.record(System.nanoTime() - t1);
+    }
+
+    /**
+     * Records every drained frame (valid or not) in receive order, then rewinds.
+     */
+    private void journal(MatchJournal j) {
+        int port;
+        while ((port = next()) >= 0) {
+            try {
+                j.append(MatchJournal.RX, port, frames[port][pos[port]], stamps[port][pos[port]]);
+            } catch (RuntimeException e) {
+                // Losing the recording must not lose the packet
+                AsyncLog.error("Could not journal frame:", e);
+            }
+            pos[port]++;
+        }
+        Arrays.fill(pos, 0);
+    }
+
+    /**
+     * Picks the ring whose next drained frame is the oldest.
+     * @return Its index, or -1 if every drained frame has been handled.
+     */
+    private int next() {
+        if (rings.length == 1) return pos[0] < count[0] ? 0 : -1;
+
+        int best = -1;
+        long bestStamp = 0;
+        for (int i = 0; i < rings.length; i++) {
+            if (pos[i] == count[i]) continue;
+            long s = stamps[i][pos[i]];
+            // nanoTime values are compared by subtraction (they may wrap)
+            if (best < 0 || s - bestStamp < 0) {
+                best = i;
+                bestStamp = s;
+            }
         }
+        return best;
     }
-}
\ No newline at end of file
+}
@@ -3,4 +3,37 @@
  */
 public interface PacketListener {
     void onPacket(Packet p);
-}
\ No newline at end of file
+
+    /**
+     * Fast path used by the PacketBus: the packet fields without a Packet object.
+     * Busy listeners (like the GameEngine) override this to avoid creating garbage.
+     * By default it builds a Packet and calls onPacket(Packet), so slow listeners
+     * (like the debug logger) keep working unchanged.
+     */
+    default void onPacket(int team, int flags, int value) {
+        onPacket(new Packet(team, flags, value));
+    }
+
+    /**
+     * Same as above, plus where and when the frame was received.
+     * Listeners that care about the source radio (or about latency) override this.
+     * @param port Index of the dongle the frame came from (0 if there is only one).
+     * @param rxNanos System.nanoTime() when the bytes were read (0 if unknown).
+     */
+    default void onPacket(int team, int flags, int value, int port, long rxNanos) {
+        onPacket(team, flags, value);
+    }
+
+    /**
+     * Batch path: all packets the Decoder took in one go, in the order they were received.
+     * By default each packet goes to onPacket(team, flags, value, port, rxNanos).
+     * Listeners that can do the work once per batch (like the GameEngine, which
+     * updates the screens only once) override this.
+     * The batch is reused after the call, so do not keep it.
+     */
+    default void onPackets(PacketBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            onPacket(batch.team(i), batch.flags(i), batch.value(i), batch.port(i), batch.rxNanos(i));
+        }
+    }
+}
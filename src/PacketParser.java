@@ -2,9 +2,19 @@ import java.util.Optional;
 
 /**
  * Validates raw byte arrays and converts them into Packet objects.
+ * It also has a fast path that works on packed ints and creates no objects.
  */
 public class PacketParser {
+    /**
+     * Returned by parseFrame when the checksum does not match.
+     * A valid result never has the top byte set, so it can never be -1.
+     */
+    public static final int INVALID = -1;
+
     private final ChecksumStrategy sum;
+    // Number of frames with a wrong checksum (written only by the Decoder thread)
+    private volatile long rejects = 0;
+
     public PacketParser(ChecksumStrategy sum){ this.sum = sum; }
 
     /**
@@ -16,11 +26,59 @@ public class PacketParser {
         if(raw == null || raw.length != 4) return Optional.empty();
         
         // Validate checksum integrity
-        if(!sum.valid(raw[0], raw[1], raw[2], raw[3])) return Optional.empty();
+        if(!sum.valid(raw[0], raw[1], raw[2], raw[3])) {
+            rejects++;
+            return Optional.empty();
+        }
         
         int team  = raw[0] & 0xFF;
         int flags = raw[1] & 0xFF;
         int value = raw[2] & 0xFF;
         return Optional.of(new Packet(team, flags, value));
     }
-}
\ No newline at end of file
+
+    /**
+     * Fast path: checks a frame packed as [team][flags][value][checksum].
+     * @param frame The packed frame (as stored in the FrameRing).
+     * @return The packet packed as [0][team][flags][value], or INVALID.
+     *         Use team(), flags() and value() to unpack it.
+     */
+    public int parseFrame(int frame){
+        if(!sum.valid((byte)(frame >>> 24), (byte)(frame >>> 16),
+                      (byte)(frame >>> 8), (byte)frame)) {
+            rejects++;
+            return INVALID;
+        }
+        return frame >>> 8;
+    }
+
+    /**
+     * Batch path: checks many packed frames in one call and keeps the valid ones.
+     * The valid frames are moved to the front of the range (in order), the
+     * others are counted as rejects.
+     * @return How many valid frames now start at 'off'.
+     */
+    public int filterValid(int[] frames, int off, int len){
+        int kept = sum.filterValid(frames, off, len);
+        if(kept != len) rejects += len - kept;
+        return kept;
+    }
+
+    /**
+     * Same, and moves each frame's receive time (in 'stamps') along with it.
+     * Used by the Decoder on every batch it takes from a ring.
+     */
+    public int filterValid(int[] frames, long[] stamps, int off, int len){
+        int kept = sum.filterValid(frames, stamps, off, len);
+        if(kept != len) rejects += len - kept;
+        return kept;
+    }
+
+    // Number of frames rejected because of a wrong checksum
+    public long rejects() { return rejects; }
+
+    // Unpacks the result of parseFrame
+    public static int team(int packed)  { return (packed >>> 16) & 0xFF; }
+    public static int flags(int packed) { return (packed >>> 8) & 0xFF; }
+    public static int value(int packed) { return packed & 0xFF; }
+}
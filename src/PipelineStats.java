@@ -0,0 +1,83 @@
+/**
+ * Publishes the receive pipeline counters (Readers, rings, Parser, Bus) over JMX
+ * as "battlecar:type=Pipeline". Every value is read from the live objects
+ * when asked for, so nothing extra happens per frame.
+ * With several dongles the values are summed over all Readers and rings
+ * (the high-water mark is the biggest of all rings).
+ */
+public class PipelineStats implements PipelineStatsMBean {
+    private final SerialReader[] readers;
+    private final FrameRing[] rings;
+    private final PacketParser parser;
+    private final PacketBus bus;
+
+    public PipelineStats(SerialReader[] readers, FrameRing[] rings, PacketParser parser, PacketBus bus) {
+        if (readers == null || rings == null || parser == null || bus == null) {
+            throw new IllegalArgumentException("readers, rings, parser and bus must be set");
+        }
+        this.readers = readers.clone();
+        this.rings = rings.clone();
+        this.parser = parser;
+        this.bus = bus;
+    }
+
+    @Override
+    public long getFramesRead() {
+        long n = 0;
+        for (SerialReader r : readers) n += r.sync().frames();
+        return n;
+    }
+
+    @Override
+    public long getResyncs() {
+        long n = 0;
+        for (SerialReader r : readers) n += r.sync().resyncs();
+        return n;
+    }
+
+    @Override
+    public long getSkippedBytes() {
+        long n = 0;
+        for (SerialReader r : readers) n += r.sync().skippedBytes();
+        return n;
+    }
+
+    @Override
+    public long getChecksumRejects() { return parser.rejects(); }
+
+    @Override
+    public int getQueueDepth() {
+        int n = 0;
+        for (FrameRing r : rings) n += r.size();
+        return n;
+    }
+
+    @Override
+    public int getQueueHighWater() {
+        int max = 0;
+        for (FrameRing r : rings) max = Math.max(max, r.highWater());
+        return max;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        int n = 0;
+        for (FrameRing r : rings) n += r.capacity();
+        return n;
+    }
+
+    @Override
+    public long getListenerErrors() { return bus.listenerErrors(); }
+
+    @Override
+    public long getHeartbeatsSuppressed() {
+        return (bus instanceof HeartbeatFilter) ? ((HeartbeatFilter) bus).suppressed() : 0;
+    }
+
+    /**
+     * Registers this object with the platform MBean server.
+     */
+    public void register() {
+        Jmx.register(this, "battlecar:type=Pipeline");
+    }
+}
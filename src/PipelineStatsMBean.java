@@ -0,0 +1,14 @@
+/**
+ * Live counters of the receive pipeline, as shown in JConsole / VisualVM.
+ */
+public interface PipelineStatsMBean {
+    long getFramesRead();
+    long getResyncs();
+    long getSkippedBytes();
+    long getChecksumRejects();
+    int getQueueDepth();
+    int getQueueHighWater();
+    int getQueueCapacity();
+    long getListenerErrors();
+    long getHeartbeatsSuppressed();
+}
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Finds out which serial ports have a ZigBee dongle with cars behind it.
+ * Every candidate port is opened at the same time, on its own thread, and we
+ * listen for heartbeat frames (FLAG_HB, passing the checksum). A port that
+ * hears at least one heartbeat is kept and the teams it heard are mapped to
+ * it; all other ports are closed again.
+ * The cars send a heartbeat every 200ms, so this takes about one heartbeat
+ * interval no matter how many ports there are (and less if we know how many
+ * teams to expect and have heard them all).
+ * The bytes read while listening are not passed on; the next heartbeats are.
+ */
+public class PortDiscovery {
+    // The cars' heartbeat interval, plus room for the radio and a frame cut in half
+    public static final long DEFAULT_LISTEN_MS = 400;
+
+    private static final int BUF_SIZE = 256;
+
+    private final ChecksumStrategy sum;
+    private final long listenMs;
+    private final int expectedTeams;
+
+    /**
+     * What the discovery found.
+     */
+    public static final class Result {
+        private final List<SerialTransport> links;
+        private final int[] teamPort;
+
+        Result(List<SerialTransport> links, int[] teamPort) {
+            this.links = links;
+            this.teamPort = teamPort;
+        }
+
+        // The ports that heard heartbeats, still open, in the order they were given
+        public List<SerialTransport> links() { return links; }
+
+        /**
+         * Index in links() of the port a team was heard on.
+         * @return -1 if the team was not heard.
+         */
+        public int portFor(int team) { return teamPort[team & 0xFF]; }
+
+        // Number of teams heard on any port
+        public int teams() {
+            int n = 0;
+            for (int t = 1; t < 255; t++) if (teamPort[t] >= 0) n++;
+            return n;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("PortDiscovery.Result(");
+            for (int i = 0; i < links.size(); i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(links.get(i)).append(": teams");
+                for (int t = 1; t < 255; t++) if (teamPort[t] == i) sb.append(' ').append(t);
+            }
+            return sb.append(")").toString();
+        }
+    }
+
+    // What one port heard while listening
+    private static final class Heard {
+        final SerialTransport link;
+        final int[] heartbeats = new int[256];
+        boolean opened;
+
+        Heard(SerialTransport link) { this.link = link; }
+    }
+
+    /**
+     * @param sum The checksum the cars use.
+     * @param listenMs How long to listen on every port.
+     * @param expectedTeams Stop early once this many teams were heard (0 = always listen the full time).
+     */
+    public PortDiscovery(ChecksumStrategy sum, long listenMs, int expectedTeams) {
+        if (sum == null) {
+            throw new IllegalArgumentException("sum must not be null");
+        }
+        if (listenMs <= 0 || expectedTeams < 0) {
+            throw new IllegalArgumentException("listenMs must be positive and expectedTeams >= 0");
+        }
+        this.sum = sum;
+        this.listenMs = listenMs;
+        this.expectedTeams = expectedTeams;
+    }
+
+    /**
+     * Opens all candidates at once and listens for heartbeats.
+     * @param candidates Links that are NOT open yet (e.g. one SerialPortHandle per port name).
+     * @return The links that heard cars (left open) and which team is on which of them.
+     *         Links that heard nothing, or could not be opened, are closed.
+     */
+    public Result discover(List<SerialTransport> candidates) throws InterruptedException {
+        List<Heard> heard = new ArrayList<>();
+        for (SerialTransport c : candidates) heard.add(new Heard(c));
+        if (heard.isEmpty()) return new Result(new ArrayList<>(), noTeams());
+
+        // Teams heard so far on any port (to stop early)
+        AtomicIntegerArray seen = new AtomicIntegerArray(256);
+        AtomicInteger seenCount = new AtomicInteger();
+        long deadline = System.nanoTime() + listenMs * 1_000_000L;
+
+        ExecutorService pool = Executors.newFixedThreadPool(heard.size(), r -> {
+            Thread t = new Thread(r, "Discovery");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (Heard h : heard) running.add(pool.submit(() -> listen(h, deadline, seen, seenCount)));
+            for (Future<?> f : running) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    // listen() handles its own errors; this is only a safety net
+                    AsyncLog.error("Port discovery failed:", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // Keep the ports that heard someone; a team heard on two ports goes to the one that heard it most
+        List<SerialTransport> links = new ArrayList<>();
+        int[] teamPort = noTeams();
+        int[] best = new int[256];
+        for (Heard h : heard) {
+            boolean any = false;
+            for (int t = 1; t < 255; t++) any |= h.heartbeats[t] > 0;
+            if (!any) {
+                if (h.opened) h.link.close();
+                continue;
+            }
+            int idx = links.size();
+            links.add(h.link);
+            for (int t = 1; t < 255; t++) {
+                if (h.heartbeats[t] > best[t]) {
+                    best[t] = h.heartbeats[t];
+                    teamPort[t] = idx;
+                }
+            }
+        }
+        return new Result(links, teamPort);
+    }
+
+    /**
+     * Runs on a pool thread: opens one link and reads heartbeats until the deadline.
+     */
+    private void listen(Heard h, long deadline, AtomicIntegerArray seen, AtomicInteger seenCount) {
+        try {
+            h.link.open();
+            h.opened = true;
+        } catch (RuntimeException e) {
+            AsyncLog.info("Discovery: cannot open " + h.link + ": " + e.getMessage());
+            return;
+        }
+
+        FrameSync sync = new FrameSync(sum);
+        byte[] buf = new byte[BUF_SIZE];
+        try {
+            while (System.nanoTime() - deadline < 0 && !Thread.currentThread().isInterrupted()) {
+                if (expectedTeams > 0 && seenCount.get() >= expectedTeams) return;
+                int n = h.link.read(buf, buf.length);
+                if (n < 0) return;
+                for (int i = 0; i < n; i++) {
+                    if (!sync.push(buf[i])) continue;
+                    int f = sync.frame();
+                    int team = f >>> 24;
+                    if (team < 1 || team > 254 || !Packet.isHb((f >>> 16) & 0xFF)) continue;
+                    h.heartbeats[team]++;
+                    if (seen.compareAndSet(team, 0, 1)) seenCount.incrementAndGet();
+                }
+            }
+        } catch (RuntimeException e) {
+            AsyncLog.info("Discovery: read failed on " + h.link + ": " + e.getMessage());
+        }
+    }
+
+    private static int[] noTeams() {
+        int[] r = new int[256];
+        Arrays.fill(r, -1);
+        return r;
+    }
+}
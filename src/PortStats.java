@@ -0,0 +1,77 @@
+import javax.management.ObjectName;
+
+/**
+ * Publishes one port's send counters and the port's own read/write errors
+ * over JMX as "battlecar:type=Port,name=...".
+ * The counters come from the port's TransmitQueue, or with -Dtx=direct from
+ * the DirectCommandDispatcher (which has no queue, so coalesced, deduplicated,
+ * dropped and pending stay 0 and every frame is one write).
+ * Read and write errors are only known for real USB ports (SerialPortHandle);
+ * otherwise the sender's failed writes are counted.
+ */
+public class PortStats implements PortStatsMBean {
+    // Exactly one of these is set
+    private final TransmitQueue queue;
+    private final DirectCommandDispatcher direct;
+    private final SerialPortHandle handle;
+    private final String name;
+
+    public PortStats(TransmitQueue queue) {
+        this(queue, null, queue != null ? queue.port().transport() : null);
+    }
+
+    public PortStats(DirectCommandDispatcher direct) {
+        this(null, direct, direct != null ? direct.port().transport() : null);
+    }
+
+    private PortStats(TransmitQueue queue, DirectCommandDispatcher direct, SerialTransport t) {
+        if (t == null) {
+            throw new IllegalArgumentException("queue or dispatcher must not be null");
+        }
+        this.queue = queue;
+        this.direct = direct;
+        this.handle = (t instanceof SerialPortHandle) ? (SerialPortHandle) t : null;
+        this.name = (handle != null) ? handle.portName() : t.toString();
+    }
+
+    @Override
+    public String getPort() { return name; }
+    @Override
+    public long getRgbSent() { return sent(Commands.CMD_SET_RGB); }
+    @Override
+    public long getBeepsSent() { return sent(Commands.CMD_BEEP); }
+    @Override
+    public long getFireModesSent() { return sent(Commands.CMD_FIREMODE); }
+    @Override
+    public long getFramesSent() { return queue != null ? queue.framesSent() : direct.framesSent(); }
+    @Override
+    public long getWrites() { return queue != null ? queue.writes() : direct.framesSent(); }
+    @Override
+    public long getCoalesced() { return queue != null ? queue.coalesced() : 0; }
+    @Override
+    public long getDeduplicated() { return queue != null ? queue.deduplicated() : 0; }
+    @Override
+    public long getDropped() { return queue != null ? queue.dropped() : 0; }
+    @Override
+    public int getPending() { return queue != null ? queue.pending() : 0; }
+
+    private long sent(int cmd) { return queue != null ? queue.sent(cmd) : direct.sent(cmd); }
+
+    @Override
+    public long getWriteErrors() {
+        if (handle != null) return handle.writeErrors();
+        return queue != null ? queue.writeErrors() : direct.writeErrors();
+    }
+
+    @Override
+    public long getReadErrors() {
+        return handle != null ? handle.readErrors() : 0;
+    }
+
+    /**
+     * Registers this object with the platform MBean server.
+     */
+    public void register() {
+        Jmx.register(this, "battlecar:type=Port,name=" + ObjectName.quote(name));
+    }
+}
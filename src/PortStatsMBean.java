@@ -0,0 +1,17 @@
+/**
+ * Live counters of one dongle's send side, as shown in JConsole / VisualVM.
+ */
+public interface PortStatsMBean {
+    String getPort();
+    long getRgbSent();
+    long getBeepsSent();
+    long getFireModesSent();
+    long getFramesSent();
+    long getWrites();
+    long getCoalesced();
+    long getDeduplicated();
+    long getDropped();
+    int getPending();
+    long getWriteErrors();
+    long getReadErrors();
+}
@@ -0,0 +1,167 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Re-runs a recorded match (a MatchJournal) through the real parser, bus and
+ * Game Engine, without any radio.
+ * The engine runs on a ManualClock that jumps to each frame's receive time,
+ * so every run of the same recording gives the same health values and sends
+ * the same commands. By default it runs as fast as possible (a whole match
+ * takes a few milliseconds); --realtime waits between frames like the real match.
+ *
+ * Usage: java ReplayDriver DIR NAME [--realtime] [--runs N]
+ *   -Dteams=N   number of teams (default 2)
+ *   -Dhb.keepAliveMs=N   put a HeartbeatFilter in front of the engine
+ *   -Dchecksum=sum|crc8   the checksum the match was recorded with (default sum)
+ */
+public class ReplayDriver {
+    // How long we keep the clock running after the last frame, so sequences can finish
+    private static final long TAIL_MS = 5000;
+
+    /**
+     * Collects the commands the engine sends instead of writing them to a port.
+     * Keeps a running hash of all frames, so two runs can be compared quickly.
+     */
+    private static class RecordingDispatcher extends CommandDispatcher {
+        private long count = 0;
+        private long digest = 1125899906842597L;
+
+        public RecordingDispatcher() {
+            super(null);
+        }
+
+        @Override
+        public void send(Command c) {
+            byte[] f = c.toBytes();
+            int frame = (f[0] & 0xFF) << 24 | (f[1] & 0xFF) << 16 | (f[2] & 0xFF) << 8 | (f[3] & 0xFF);
+            digest = 31 * digest + frame;
+            count++;
+        }
+    }
+
+    /**
+     * The received frames of a journal, in the order they were recorded.
+     */
+    private static final class Recording {
+        long[] stamps = new long[1024];
+        int[] frames = new int[1024];
+        int[] ports = new int[1024];
+        int size = 0;
+
+        void add(long nanos, int port, int frame) {
+            if (size == frames.length) {
+                stamps = Arrays.copyOf(stamps, size * 2);
+                frames = Arrays.copyOf(frames, size * 2);
+                ports = Arrays.copyOf(ports, size * 2);
+            }
+            stamps[size] = nanos;
+            frames[size] = frame;
+            ports[size] = port;
+            size++;
+        }
+    }
+
+    /**
+     * The outcome of one replay.
+     */
+    public static final class Result {
+        public final int[] hp;
+        public final long commands;
+        public final long digest;
+        public final long elapsedNanos;
+
+        Result(int[] hp, long commands, long digest, long elapsedNanos) {
+            this.hp = hp;
+            this.commands = commands;
+            this.digest = digest;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("HP");
+            for (int t = 1; t < hp.length; t++) sb.append(" T").append(t).append("=").append(hp[t]);
+            return sb + ", commands=" + commands + ", digest=" + Long.toHexString(digest) +
+                    ", took " + (elapsedNanos / 1000) / 1000.0 + " ms";
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java ReplayDriver DIR NAME [--realtime] [--runs N]");
+            System.exit(2);
+        }
+        Path dir = Paths.get(args[0]);
+        String name = args[1];
+        boolean realtime = false;
+        int runs = 1;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--realtime")) realtime = true;
+            else if (args[i].equals("--runs") && i + 1 < args.length) runs = Integer.parseInt(args[++i]);
+        }
+        int teams = Integer.getInteger("teams", 2);
+        long keepAliveMs = Long.getLong("hb.keepAliveMs", 0L);
+        ChecksumStrategy checksum = ChecksumStrategy.parse(System.getProperty("checksum"));
+        Commands.setChecksum(checksum);
+
+        // Only the received frames are replayed; the sent ones are what we compare against
+        Recording rec = new Recording();
+        long[] sent = new long[1];
+        MatchJournal.read(dir, name, (nanos, direction, port, frame) -> {
+            if (direction == MatchJournal.RX) rec.add(nanos, port, frame);
+            else sent[0]++;
+        });
+        System.out.println("Loaded " + rec.size + " received frames (" + sent[0] + " commands were sent live)");
+        if (rec.size == 0) return;
+
+        Result first = null;
+        for (int r = 1; r <= runs; r++) {
+            Result res = replay(rec, teams, keepAliveMs, checksum, realtime);
+            System.out.println("Run " + r + ": " + res);
+            if (first == null) {
+                first = res;
+            } else if (res.digest != first.digest || !Arrays.equals(res.hp, first.hp)) {
+                System.out.println("Run " + r + " does NOT match run 1!");
+            }
+        }
+    }
+
+    /**
+     * Plays the recording through a fresh parser, bus and engine.
+     */
+    private static Result replay(Recording rec, int teams, long keepAliveMs,
+                                 ChecksumStrategy checksum, boolean realtime) {
+        ManualClock clock = new ManualClock(rec.stamps[0]);
+        RecordingDispatcher out = new RecordingDispatcher();
+        GameEngine engine = new GameEngine(out, teams, new Timeline(clock));
+        PacketBus bus = keepAliveMs > 0 ? new HeartbeatFilter(keepAliveMs, clock) : new PacketBus();
+        bus.add(engine);
+        PacketParser parser = new PacketParser(checksum);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < rec.size; i++) {
+            long stamp = rec.stamps[i];
+            if (realtime) {
+                // Wait until this frame is due, measured from the first frame
+                long due = start + (stamp - rec.stamps[0]);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            }
+            // Run every timed step (start sequence, ...) that happened before this frame
+            clock.advanceTo(stamp);
+            int p = parser.parseFrame(rec.frames[i]);
+            if (p != PacketParser.INVALID) {
+                bus.publish(PacketParser.team(p), PacketParser.flags(p), PacketParser.value(p),
+                        rec.ports[i], stamp);
+            }
+        }
+        clock.advanceMillis(TAIL_MS);
+        long elapsed = System.nanoTime() - start;
+
+        int[] hp = new int[teams + 1];
+        for (int t = 1; t <= teams; t++) hp[t] = engine.hp(t);
+        return new Result(hp, out.count, out.digest, elapsed);
+    }
+}
@@ -3,31 +3,52 @@ import java.awt.*;
 
 /**
  * The Window (UI) for the game.
- * It shows health bars and status messages.
+ * It shows one health bar per team and status messages.
+ * The engine hands us a new GameSnapshot on every change, but we only keep
+ * the newest one. A Swing timer copies it to the screen at most FPS times a
+ * second, so a busy match never floods the Swing thread.
  */
 public class ScoreboardUI extends JFrame implements GameStateListener {
-    private final JProgressBar a = new JProgressBar(0,100);
-    private final JProgressBar b = new JProgressBar(0,100);
+    // Most screen updates per second (-Dui.fps)
+    private static final int FPS = Math.max(1, Integer.getInteger("ui.fps", 30));
+
+    // Health bars (index = team ID, index 0 is not used)
+    private final JProgressBar[] bars;
     private final JLabel msg = new JLabel("Waiting for start");
 
+    // The newest state from the engine, and the version that is on screen
+    private volatile GameSnapshot latest;
+    private long shown = -1;
+
     /**
-     * Constructor: Sets up the window size, title, and layout.
+     * Constructor for the classic 2-team duel.
      */
     public ScoreboardUI(){
+        this(2);
+    }
+
+    /**
+     * Constructor: Sets up the window size, title, and layout.
+     * @param teams Number of teams (one health bar each).
+     */
+    public ScoreboardUI(int teams){
         super("Battle Car Scoreboard");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        setSize(420, 200);
+        setSize(420, 120 + 40 * teams);
         setLocationRelativeTo(null);
 
-        a.setValue(100); a.setStringPainted(true);
-        b.setValue(100); b.setStringPainted(true);
-
-        JPanel p = new JPanel(new GridLayout(3,1,8,8));
+        bars = new JProgressBar[teams + 1];
+        JPanel p = new JPanel(new GridLayout(teams + 1,1,8,8));
         p.setBorder(BorderFactory.createEmptyBorder(10,10,10,10));
-        p.add(row("Team 1", a));
-        p.add(row("Team 2", b));
+        for (int t = 1; t <= teams; t++) {
+            bars[t] = new JProgressBar(0,100);
+            bars[t].setValue(100); bars[t].setStringPainted(true);
+            p.add(row("Team " + t, bars[t]));
+        }
         p.add(msg);
         setContentPane(p);
+
+        new Timer(1000 / FPS, e -> render()).start();
     }
 
     /**
@@ -40,17 +61,37 @@ public class ScoreboardUI extends JFrame implements GameStateListener {
         return r;
     }
 
+    /**
+     * Keeps the newest game state. Called by the Game Engine on any thread.
+     */
+    @Override
+    public void onSnapshot(GameSnapshot s) {
+        latest = s;
+    }
+
+    /**
+     * Copies the newest snapshot to the screen, if it changed (runs on the Swing thread).
+     */
+    private void render() {
+        GameSnapshot s = latest;
+        if (s == null || s.version() == shown) return;
+        shown = s.version();
+        for (int t = 1; t < bars.length && t <= s.teams(); t++) {
+            if (bars[t].getValue() != s.hp(t)) bars[t].setValue(s.hp(t));
+        }
+        String text = s.statusHtml();
+        if (!text.equals(msg.getText())) msg.setText(text);
+    }
+
     /**
      * Updates the health bars on the screen.
-     * Called by the Game Engine when a car gets hit.
+     * Not used by the Game Engine any more (it sends snapshots), kept for other senders.
      */
     @Override
     public void onHpUpdate(int team, int hp) {
         // Ensure UI updates happen on the correct thread (Swing Event Thread)
-        SwingUtilities.invokeLater(() -> {
-            if(team==1) a.setValue(hp);
-            if(team==2) b.setValue(hp);
-        });
+        if (team < 1 || team >= bars.length) return;
+        SwingUtilities.invokeLater(() -> bars[team].setValue(hp));
     }
 
     /**
@@ -3,16 +3,20 @@
  * This acts like a "Adapter" or "Bridge".
  * It makes it easier for the rest of the app to talk to the hardware
  * without worrying about the complex details of the library (JSSC).
+ * The link underneath can be a real USB port or a simulated one.
+ * With a SerialSupervisor attached, a failed read or write is reported to it
+ * so the link gets reopened.
  */
 public class SerialEndpoint implements AutoCloseable {
-    private final SerialPortHandle handle;
+    private final SerialTransport handle;
     private final byte[] oneByte = new byte[1];
+    // Gets told when a read or write fails (null = nobody)
+    private volatile SerialSupervisor supervisor;
 
     /**
-     * Constructor: Connects to the specific port (like "COM3") at a specific speed.
-     * It immediately opens the connection.
+     * Constructor: Wraps a link (like a SerialPortHandle) that is already open.
      */
-    public SerialEndpoint(SerialPortHandle handle) {
+    public SerialEndpoint(SerialTransport handle) {
         if (handle == null) {
             throw new IllegalArgumentException("handle must not be null");
         }
@@ -26,7 +30,13 @@ public class SerialEndpoint implements AutoCloseable {
      */
     public int read(byte[] buf) {
         if (buf == null || buf.length == 0) return 0;
-        return handle.read(buf, buf.length);
+        long gen = generation();
+        try {
+            return handle.read(buf, buf.length);
+        } catch (RuntimeException e) {
+            failed(e, gen);
+            throw e;
+        }
     }
 
     /**
@@ -35,7 +45,14 @@ public class SerialEndpoint implements AutoCloseable {
      * @return The byte value (0-255), or -1 if the buffer is empty.
      */
     public int readOne() {
-        int n = handle.read(oneByte, 1);
+        int n;
+        long gen = generation();
+        try {
+            n = handle.read(oneByte, 1);
+        } catch (RuntimeException e) {
+            failed(e, gen);
+            throw e;
+        }
         // We use & 0xFF to make sure it's a positive number
         if (n == 1) return oneByte[0] & 0xFF;
         return -1;
@@ -46,7 +63,25 @@ public class SerialEndpoint implements AutoCloseable {
      * @param buf The bytes to send.
      */
     public synchronized void write(byte[] buf) {
-        handle.write(buf);
+        long gen = generation();
+        try {
+            handle.write(buf);
+        } catch (RuntimeException e) {
+            failed(e, gen);
+            throw e;
+        }
+    }
+
+    // The supervisor's link number (0 without a supervisor)
+    private long generation() {
+        SerialSupervisor s = supervisor;
+        return (s != null) ? s.generation() : 0;
+    }
+
+    // Tells the supervisor (if any) that the link broke
+    private void failed(RuntimeException e, long gen) {
+        SerialSupervisor s = supervisor;
+        if (s != null) s.failed(e, gen);
     }
 
     /**
@@ -54,6 +89,18 @@ public class SerialEndpoint implements AutoCloseable {
      */
     public boolean isOpen() { return handle.isOpen(); }
 
+    /**
+     * The link underneath (for statistics).
+     */
+    public SerialTransport transport() { return handle; }
+
+    /**
+     * Reports failed reads and writes to a supervisor (null = nobody).
+     */
+    public void setSupervisor(SerialSupervisor supervisor) { this.supervisor = supervisor; }
+
+    public SerialSupervisor supervisor() { return supervisor; }
+
     /**
      * Closes the connection properly so we don't crash the computer's USB driver.
      */
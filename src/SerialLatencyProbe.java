@@ -0,0 +1,49 @@
+/**
+ * A small tool that compares the two serial read modes on real hardware.
+ * It opens the port once in EVENT mode and once in POLLING mode, reads the
+ * cars' heartbeats for a few seconds each, and prints how long bytes waited
+ * before the reader got them and how often the reader woke up for nothing.
+ *
+ * Usage: java SerialLatencyProbe COM7 [seconds per mode]
+ */
+public class SerialLatencyProbe {
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java SerialLatencyProbe <port> [seconds]");
+            return;
+        }
+        String portName = args[0];
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        for (SerialPortHandle.ReadMode mode : SerialPortHandle.ReadMode.values()) {
+            measure(portName, mode, seconds);
+        }
+    }
+
+    /**
+     * Reads from the port for the given time and prints the statistics.
+     */
+    private static void measure(String portName, SerialPortHandle.ReadMode mode, int seconds) {
+        SerialPortHandle handle = new SerialPortHandle(portName, 9600, mode);
+        handle.setMeasureLatency(true);
+        handle.open();
+
+        byte[] buf = new byte[64];
+        long bytes = 0;
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        try {
+            while (System.currentTimeMillis() < end) {
+                int n = handle.read(buf, buf.length);
+                if (n > 0) bytes += n;
+            }
+        } finally {
+            handle.close();
+        }
+
+        System.out.printf("%-8s bytes=%d reads=%d emptyWakeups/s=%.1f avgLatency=%.0fus maxLatency=%.0fus%n",
+                handle.readMode(), bytes, handle.dataReads(),
+                handle.emptyWakeups() / (double) seconds,
+                handle.avgReadLatencyMicros(), handle.maxReadLatencyMicros());
+    }
+}
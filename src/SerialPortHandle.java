@@ -1,4 +1,5 @@
 import jssc.SerialPort;
+import jssc.SerialPortEvent;
 import jssc.SerialPortException;
 import jssc.SerialPortList;
 
@@ -6,30 +7,92 @@ import jssc.SerialPortList;
  * Controls the physical USB port using the JSSC library.
  * It opens the connection and handles reading/writing bytes.
  */
-public class SerialPortHandle implements AutoCloseable {
+public class SerialPortHandle implements SerialTransport {
+    /**
+     * How the reader waits for new bytes.
+     * EVENT:   JSSC tells us when bytes arrive, so the reader wakes up right away.
+     * POLLING: The old way. Check the buffer, sleep 10ms, check again.
+     */
+    public enum ReadMode {
+        EVENT, POLLING;
+
+        /**
+         * Reads a mode name like "event" or "poll". Anything unknown means EVENT.
+         */
+        public static ReadMode parse(String name) {
+            if (name != null && name.toLowerCase().startsWith("poll")) return POLLING;
+            return EVENT;
+        }
+    }
+
+    // How long the reader waits for an event before checking again
+    private static final int EVENT_WAIT_MS = 100;
+    // How long the poller sleeps when the buffer is empty
+    private static final int POLL_SLEEP_MS = 10;
+
     private final String portName;
     private final int baud;
-    private SerialPort port;
+    private final ReadMode mode;
+    // Set to null by close() while the reader may be inside read(), so always copy it to a local first
+    private volatile SerialPort port;
+
+    // The mode we really use (EVENT falls back to POLLING if JSSC refuses the listener)
+    private volatile ReadMode activeMode;
+    // If true, we also listen for events in POLLING mode, just to measure latency
+    private boolean measureLatency = false;
+
+    // Used by the event listener to wake up the reader thread
+    private final Object rxLock = new Object();
+    private boolean rxReady = false;
+    // When the oldest unread bytes arrived (0 = nothing waiting)
+    private volatile long rxArrivalNanos = 0;
+
+    // --- STATISTICS (written by the reader thread) ---
+    private volatile long dataReads = 0;
+    private volatile long emptyWakeups = 0;
+    private volatile long latencyCount = 0;
+    private volatile long latencySumNanos = 0;
+    private volatile long latencyMaxNanos = 0;
+
+    // Failed reads and writes (the exceptions are passed on to the caller)
+    private volatile long readErrors = 0;
+    private volatile long writeErrors = 0;
 
     public SerialPortHandle(String portName, int baud) {
+        this(portName, baud, ReadMode.EVENT);
+    }
+
+    public SerialPortHandle(String portName, int baud, ReadMode mode) {
         if (portName == null || portName.isEmpty()) {
             throw new IllegalArgumentException("portName must not be empty");
         }
         this.portName = portName;
         this.baud = baud;
+        this.mode = (mode == null) ? ReadMode.EVENT : mode;
+        this.activeMode = this.mode;
     }
 
+    /**
+     * Turns on latency measurement (time from bytes arriving to read() returning them).
+     * Must be called before open(). In EVENT mode it is always on.
+     */
+    public void setMeasureLatency(boolean on) { this.measureLatency = on; }
+
     /**
      * Connects to the USB port.
      * Sets the speed to 9600, with 8 data bits, 1 stop bit, and no parity.
      * These are the standard settings for Arduino XBee communication.
      */
+    @Override
     public void open() {
-        port = new SerialPort(portName);
+        // Only published once it is fully set up, so nobody writes to a half-configured port
+        SerialPort port = new SerialPort(portName);
+        boolean opened = false;
         try {
             if (!port.openPort()) {
                 throw new RuntimeException("Failed to open " + portName);
             }
+            opened = true;
             port.setParams(
                     baud,
                     SerialPort.DATABITS_8,
@@ -37,49 +100,132 @@ public class SerialPortHandle implements AutoCloseable {
                     SerialPort.PARITY_NONE
             );
             port.setFlowControlMode(SerialPort.FLOWCONTROL_NONE);
-            System.out.println("Opened " + portName + " @ " + baud + " 8N1");
-        } catch (SerialPortException e) {
+            activeMode = mode;
+            if (mode == ReadMode.EVENT || measureLatency) listenForBytes(port);
+            this.port = port;
+            AsyncLog.info("Opened " + portName + " @ " + baud + " 8N1 (" + activeMode + " read)");
+        } catch (SerialPortException | RuntimeException e) {
+            // Do not leave the device open (and "busy") when the setup failed
+            if (opened) {
+                try {
+                    port.closePort();
+                } catch (SerialPortException ignored) {}
+            }
+            if (e instanceof RuntimeException) throw (RuntimeException) e;
             throw new RuntimeException("Open error on " + portName + ": " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Asks JSSC to call us whenever bytes arrive.
+     * If that is not supported, we fall back to the 10ms poller.
+     */
+    private void listenForBytes(SerialPort port) {
+        try {
+            port.addEventListener(this::onSerialEvent, SerialPort.MASK_RXCHAR);
+        } catch (SerialPortException e) {
+            AsyncLog.error("Serial events not available on " + portName +
+                    ", falling back to polling: " + e.getMessage());
+            activeMode = ReadMode.POLLING;
+        }
+    }
+
+    /**
+     * Called by the JSSC event thread when bytes arrive.
+     * Remembers the arrival time and wakes up the reader.
+     */
+    private void onSerialEvent(SerialPortEvent e) {
+        if (!e.isRXCHAR() || e.getEventValue() <= 0) return;
+        if (rxArrivalNanos == 0) rxArrivalNanos = System.nanoTime();
+        if (activeMode == ReadMode.EVENT) {
+            synchronized (rxLock) {
+                rxReady = true;
+                rxLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits until the event listener says bytes arrived, or until EVENT_WAIT_MS passes.
+     */
+    private void awaitBytes() {
+        synchronized (rxLock) {
+            try {
+                if (!rxReady) rxLock.wait(EVENT_WAIT_MS);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            rxReady = false;
+        }
+    }
+
     /**
      * Reads data from the USB port into the provided buffer.
      * @param buf The array where we will store the data we read.
      * @param len The maximum number of bytes to read.
      * @return The actual number of bytes we read (0 if nothing was there).
      */
+    @Override
     public int read(byte[] buf, int len) {
+        SerialPort port = this.port;
         if (port == null) return -1;
         if (buf == null || len <= 0) return 0;
         try {
             int available = port.getInputBufferBytesCount();
             if (available <= 0) {
-                // If no data is waiting, sleep for 10ms to save CPU power
-                try { Thread.sleep(10); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+                if (activeMode == ReadMode.EVENT) {
+                    // Sleep until JSSC tells us bytes arrived
+                    awaitBytes();
+                } else {
+                    // If no data is waiting, sleep for 10ms to save CPU power
+                    try { Thread.sleep(POLL_SLEEP_MS); } catch (InterruptedException ie) { Thread.currentThread().interrupt(); }
+                }
                 available = port.getInputBufferBytesCount();
-                if (available <= 0) return 0;
+                if (available <= 0) {
+                    emptyWakeups++;
+                    return 0;
+                }
             }
             int toRead = Math.min(available, len);
             byte[] data = port.readBytes(toRead);
             if (data == null) return 0;
             System.arraycopy(data, 0, buf, 0, data.length);
+            recordLatency();
             return data.length;
         } catch (SerialPortException e) {
+            readErrors++;
             throw new RuntimeException("Read error on " + portName + ": " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Records how long the bytes waited between arriving and being read.
+     */
+    private void recordLatency() {
+        dataReads++;
+        long arrived = rxArrivalNanos;
+        if (arrived == 0) return;
+        rxArrivalNanos = 0;
+        long lat = System.nanoTime() - arrived;
+        latencyCount++;
+        latencySumNanos += lat;
+        if (lat > latencyMaxNanos) latencyMaxNanos = lat;
+        if (LatencyStats.ENABLED) LatencyStats.RADIO.record(lat);
+    }
+
     /**
      * Sends bytes out to the USB port.
      * @param buf The array of bytes to send.
      */
+    @Override
     public synchronized void write(byte[] buf) {
+        SerialPort port = this.port;
         if (port == null) throw new IllegalStateException("Port not open");
         if (buf == null || buf.length == 0) return;
         try {
             port.writeBytes(buf);
         } catch (SerialPortException e) {
+            writeErrors++;
             throw new RuntimeException("Write error on " + portName + ": " + e.getMessage(), e);
         }
     }
@@ -88,7 +234,9 @@ public class SerialPortHandle implements AutoCloseable {
      * Checks if the connection is currently active.
      * @return true if connected, false if closed.
      */
+    @Override
     public boolean isOpen() {
+        SerialPort port = this.port;
         return port != null && port.isOpened();
     }
 
@@ -98,14 +246,52 @@ public class SerialPortHandle implements AutoCloseable {
      */
     @Override
     public void close() {
+        SerialPort port = this.port;
         if (port != null) {
+            // Readers and writers see "not open" from now on
+            this.port = null;
+            try {
+                if (port.isOpened()) port.removeEventListener();
+            } catch (SerialPortException ignored) {}
             try {
                 port.closePort();
             } catch (SerialPortException ignored) {}
-            port = null;
+        }
+        // Wake up a reader that might still be waiting for an event
+        synchronized (rxLock) {
+            rxReady = true;
+            rxLock.notifyAll();
         }
     }
 
+    /**
+     * The read mode that is really in use.
+     */
+    public ReadMode readMode() { return activeMode; }
+
+    // Number of read() calls that returned data
+    public long dataReads() { return dataReads; }
+    // Number of times the reader woke up and found nothing
+    public long emptyWakeups() { return emptyWakeups; }
+    // Number of reads and writes that failed
+    public long readErrors() { return readErrors; }
+    public long writeErrors() { return writeErrors; }
+    public String portName() { return portName; }
+
+    /**
+     * Average time (in microseconds) between bytes arriving and read() returning them.
+     * @return -1 if latency is not being measured.
+     */
+    public double avgReadLatencyMicros() {
+        long n = latencyCount;
+        return n == 0 ? -1 : (latencySumNanos / (double) n) / 1000.0;
+    }
+
+    /**
+     * Worst time (in microseconds) between bytes arriving and read() returning them.
+     */
+    public double maxReadLatencyMicros() { return latencyMaxNanos / 1000.0; }
+
     /**
      * Gets a list of all available USB serial ports on the computer.
      * @return An array of port names (e.g., "COM3", "COM4").
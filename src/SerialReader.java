@@ -1,46 +1,87 @@
-import java.util.concurrent.BlockingQueue;
-
 /**
  * A background task that reads raw bytes from the USB.
- * It groups them into sets of 4 bytes and puts them in a queue for processing.
+ * It reads whatever is available in one go, finds the 4-byte frames with
+ * a FrameSync window, and puts them in a ring buffer for processing.
+ * Every frame is stamped with the time its chunk was read, so frames from
+ * several dongles (one Reader each) can be merged in arrival order.
+ * If a byte is lost, the window slides until the frames line up again.
+ * If the endpoint has a SerialSupervisor, a failed read does not end the
+ * Reader: it waits until the port is reopened and carries on. Without one
+ * the Reader ends when the port is closed.
  */
 public class SerialReader implements Runnable {
+    // How many bytes we try to read from the port in one call
+    private static final int READ_CHUNK = 64;
+
     private final SerialEndpoint serial;
-    private final BlockingQueue<byte[]> outQ;
+    private final FrameRing outQ;
+    private final FrameSync sync;
 
-    public SerialReader(SerialEndpoint serial, BlockingQueue<byte[]> outQ){
+    public SerialReader(SerialEndpoint serial, FrameRing outQ, ChecksumStrategy checksum){
         this.serial = serial;
         this.outQ = outQ;
+        this.sync = new FrameSync(checksum);
     }
 
     /**
      * The main loop for this thread.
-     * 1. Reads one byte at a time.
-     * 2. Adds it to a temporary frame array.
-     * 3. When 4 bytes are collected, sends the frame to the output queue.
+     * 1. Reads all bytes that are waiting (up to READ_CHUNK).
+     * 2. Pushes them through the sync window one by one.
+     * 3. Every time the checksum matches, puts the packed frame and its
+     *    receive time in the ring.
      */
     @Override
     public void run() {
-        byte[] one = new byte[1];
-        byte[] frame = new byte[4];
-        int idx = 0;
+        byte[] buf = new byte[READ_CHUNK];
         try {
             while(true){
-                int n = serial.read(one);
+                SerialSupervisor sup = serial.supervisor();
+                long gen = (sup != null) ? sup.generation() : 0;
+                int n;
+                try {
+                    n = serial.read(buf);
+                } catch (RuntimeException e) {
+                    // The endpoint already told the supervisor; without one we give up as before
+                    if (sup == null) throw e;
+                    n = -1;
+                }
+                if (n < 0) {
+                    // The link is down or was closed
+                    if (sup == null) {
+                        // Nobody will reopen it, and read() would keep returning -1 at once
+                        AsyncLog.error("Reader stopped: " + serial + " is closed");
+                        return;
+                    }
+                    // Wait until the supervisor reopened it
+                    sup.failed(new IllegalStateException("link not open"), gen);
+                    if (!sup.awaitUp()) return;
+                    sync.reset();
+                    continue;
+                }
                 if (n <= 0) continue;
+                // All frames in this chunk arrived at (about) the same time
+                long rxNanos = System.nanoTime();
+
+                for (int i = 0; i < n; i++) {
+                    if (!sync.push(buf[i])) continue;
 
-                frame[idx++] = one[0];
-                
-                // Once we have 4 bytes, create a new array and send it
-                if (idx == 4) {
-                    byte[] out = new byte[4];
-                    System.arraycopy(frame, 0, out, 0, 4);
-                    outQ.put(out); // Puts the data in the queue
-                    idx = 0;       // Reset index for the next packet
+                    // Tell the user if we had to skip bytes to get back in step
+                    if (sync.lastSkipped() > 0) {
+                        AsyncLog.error("Reader resynced after skipping " +
+                                sync.lastSkipped() + " byte(s) (total resyncs: " +
+                                sync.resyncs() + ")");
+                    }
+
+                    outQ.put(sync.frame(), rxNanos); // Puts the data in the ring
                 }
             }
         } catch (InterruptedException e){
             Thread.currentThread().interrupt();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Gives access to the sync counters (frames, resyncs, skipped bytes).
+     */
+    public FrameSync sync() { return sync; }
+}
@@ -0,0 +1,186 @@
+/**
+ * Keeps one serial link alive during a match.
+ * When a read or write on the SerialEndpoint fails (for example because the
+ * USB cable was bumped), the endpoint tells the supervisor. Its own thread then
+ * closes the link and opens it again: right away first, then with growing
+ * pauses (10ms, 20ms, ... up to 2s) until it works. Meanwhile the Reader
+ * waits in awaitUp() and the send queue skips its writes.
+ * Once the link is back, the onReconnect action runs (Driver uses it to
+ * forget the port's last sent state and let the engines send their LED colors
+ * and fire mode again), so a short outage does not end the match.
+ */
+public class SerialSupervisor implements AutoCloseable {
+    private static final long FIRST_RETRY_MS = 10;
+    private static final long MAX_RETRY_MS = 2000;
+
+    private final SerialEndpoint endpoint;
+    private final String name;
+    private final Thread thread;
+    private volatile Runnable onReconnect;
+
+    // --- STATE (guarded by 'this') ---
+    private boolean down = false;
+    private boolean closed = false;
+    private long downSince = 0;
+    private String cause = "";
+    // Counts the reconnects, so errors from the old link can be told apart from new ones
+    private volatile long generation = 0;
+
+    // --- STATISTICS ---
+    private volatile long failures = 0;
+    private volatile long reconnects = 0;
+    private volatile long attempts = 0;
+    private volatile long lastOutageMillis = 0;
+
+    /**
+     * Supervises an endpoint by closing and reopening its link (a SerialPortHandle
+     * gets a fresh JSSC port on every open()).
+     * @param endpoint The endpoint to watch (it reports its failures to us).
+     */
+    public SerialSupervisor(SerialEndpoint endpoint) {
+        if (endpoint == null) {
+            throw new IllegalArgumentException("endpoint must not be null");
+        }
+        this.endpoint = endpoint;
+        this.name = endpoint.transport().toString();
+        endpoint.setSupervisor(this);
+
+        thread = new Thread(this::superviseLoop, "Supervisor-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sets what to run after every successful reconnect (on the supervisor thread).
+     */
+    public void setOnReconnect(Runnable action) { this.onReconnect = action; }
+
+    /**
+     * The current link's number. Read it before using the link and pass it to
+     * failed(), so a late error from an already replaced link is ignored.
+     */
+    public long generation() { return generation; }
+
+    /**
+     * Reports a broken link. Called by the endpoint; more reports while we are
+     * already reconnecting, or about an older link, are ignored.
+     * @param gen The generation() read before the failed call.
+     */
+    public synchronized void failed(Throwable t, long gen) {
+        if (closed || down || gen != generation) return;
+        down = true;
+        downSince = System.nanoTime();
+        cause = String.valueOf(t.getMessage());
+        failures++;
+        notifyAll();
+    }
+
+    /**
+     * Waits until the link works again (returns right away if it is up).
+     * @return false if the supervisor was closed, so the caller should stop.
+     */
+    public synchronized boolean awaitUp() throws InterruptedException {
+        while (down && !closed) wait();
+        return !closed;
+    }
+
+    public synchronized boolean isUp() { return !down && !closed; }
+
+    /**
+     * The supervisor thread: sleeps until a failure is reported, then reconnects.
+     */
+    private void superviseLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (!down && !closed) wait();
+                    if (closed) return;
+                }
+                reconnect();
+            }
+        } catch (InterruptedException e) {
+            // close() was called
+        }
+    }
+
+    private void reconnect() throws InterruptedException {
+        AsyncLog.error("Link " + name + " failed (" + cause + "), reconnecting...");
+        SerialTransport link = endpoint.transport();
+        try {
+            link.close();
+        } catch (RuntimeException ignored) {}
+
+        long delay = 0;
+        int tries = 0;
+        while (true) {
+            synchronized (this) {
+                if (closed) return;
+            }
+            if (delay > 0) Thread.sleep(delay);
+            tries++;
+            attempts++;
+            try {
+                link.open();
+                break;
+            } catch (RuntimeException e) {
+                // The link cleans up a failed open itself; close again in case it did not
+                try {
+                    link.close();
+                } catch (RuntimeException ignored) {}
+                // Only log now and then, a long outage would flood the console
+                if (tries == 1 || delay == MAX_RETRY_MS) {
+                    AsyncLog.error("Reopening " + name + " failed: " + e.getMessage());
+                }
+                delay = (delay == 0) ? FIRST_RETRY_MS : Math.min(MAX_RETRY_MS, delay * 2);
+            }
+        }
+
+        long outage;
+        synchronized (this) {
+            outage = (System.nanoTime() - downSince) / 1_000_000;
+            generation++;
+            down = false;
+            notifyAll();
+        }
+        lastOutageMillis = outage;
+        reconnects++;
+        AsyncLog.info("Link " + name + " is back after " + outage + " ms (" + tries + " attempt(s))");
+
+        Runnable r = onReconnect;
+        if (r != null) {
+            try {
+                r.run();
+            } catch (RuntimeException e) {
+                AsyncLog.error("Error after reconnecting " + name + ":", e);
+            }
+        }
+    }
+
+    // Number of times the link broke
+    public long failures() { return failures; }
+    // Number of times it was opened again
+    public long reconnects() { return reconnects; }
+    // Number of open() calls while reconnecting (successful or not)
+    public long attempts() { return attempts; }
+    // How long the last outage took, from the failure to the link working again
+    public long lastOutageMillis() { return lastOutageMillis; }
+
+    /**
+     * Stops supervising (call it before closing the endpoint on purpose).
+     * Threads waiting in awaitUp() are released.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        thread.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return "SerialSupervisor(" + name + ", failures=" + failures + ", reconnects=" + reconnects +
+                ", lastOutage=" + lastOutageMillis + "ms)";
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * Defines the contract for a byte link to the cars.
+ * The real one is the XBee dongle on a USB port (SerialPortHandle), but anything
+ * that can move bytes in both directions can be used, for example the
+ * in-memory SimulatedArena for testing without hardware.
+ */
+public interface SerialTransport extends AutoCloseable {
+    /**
+     * Opens the link. Must be called once before reading or writing.
+     */
+    void open();
+
+    /**
+     * Reads the bytes that are waiting into the provided buffer.
+     * May wait a short time if nothing is there yet.
+     * @param buf The array where we will store the data we read.
+     * @param len The maximum number of bytes to read.
+     * @return The number of bytes read (0 if nothing arrived, -1 if not open).
+     */
+    int read(byte[] buf, int len);
+
+    /**
+     * Sends bytes out to the cars.
+     * @param buf The bytes to send.
+     */
+    void write(byte[] buf);
+
+    /**
+     * Checks if the link is currently active.
+     */
+    boolean isOpen();
+
+    /**
+     * Closes the link.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,304 @@
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fake radio link with N LilyPad cars on the other side.
+ * It sends the same 4-byte heartbeat/IR/LDR frames as the firmware and reacts
+ * to CMD_SET_RGB, CMD_BEEP and CMD_FIREMODE frames written to it.
+ * This lets the whole pipeline (Reader, Decoder, Bus, Engine) run on a
+ * computer without any XBee dongle, for load tests and profiling.
+ *
+ * Behaviour of every simulated car:
+ * - Sends a heartbeat (FLAG_HB + FLAG_LIGHT if bright) every heartbeat interval.
+ * - While every car is in safety mode, the sensors are covered and uncovered
+ *   in a loop, so the engine arms and starts a match by itself.
+ * - While other cars are in auto-fire mode, it gets hit at random
+ *   and sends an instant FLAG_IR frame.
+ */
+public class SimulatedArena implements SerialTransport {
+    // Same flag bits as the LilyPad firmware
+    private static final int FLAG_IR    = 1;
+    private static final int FLAG_LIGHT = 4;
+    private static final int FLAG_HB    = 8;
+
+    // Size of the "radio -> PC" byte buffer
+    private static final int RX_CAPACITY = 64 * 1024;
+    // How long read() waits for bytes before returning 0
+    private static final int READ_WAIT_MS = 100;
+    // The auto-arm loop: covered from 1s to 2s of every 4s
+    private static final long ARM_CYCLE_MS = 4000;
+
+    private final int firstTeam;
+    private final int cars;
+    private final ChecksumStrategy sum;
+    private final long heartbeatNanos;
+    private final long tickNanos;
+    private final double hitChancePerTick;
+    private final Random rnd;
+
+    // --- CAR STATE (index = car number 1..cars, guarded by 'this') ---
+    private final int[] rgb;
+    private final int[] fireMode;
+    private final int[] beeps;
+    private final boolean[] light;
+    private final long[] nextHeartbeat;
+    private boolean autoArm = true;
+    private long startNanos;
+
+    // Finds command frames in the bytes written by the PC
+    private final FrameSync cmdSync;
+    private long commands = 0;
+
+    // --- BYTES WAITING FOR THE READER (guarded by rxLock) ---
+    private final Object rxLock = new Object();
+    private final byte[] rx = new byte[RX_CAPACITY];
+    private int rxHead = 0, rxCount = 0;
+    private long framesSent = 0, bytesDropped = 0;
+
+    private ScheduledExecutorService ticker;
+    private volatile boolean open = false;
+    // A pulled cable (see unplug()): reads and writes fail, open() fails until replugAt
+    private volatile boolean unplugged = false;
+    private volatile long replugAt = 0;
+
+    /**
+     * Creates an arena with the firmware's 200ms heartbeat and a few hits per match.
+     * @param cars Number of cars (team IDs 1..cars).
+     */
+    public SimulatedArena(int cars, ChecksumStrategy sum) {
+        this(cars, sum, 200, 0.5, 42L);
+    }
+
+    /**
+     * @param cars Number of cars (team IDs 1..cars).
+     * @param sum The checksum used for frames in both directions.
+     * @param heartbeatMs Time between heartbeats per car (the firmware uses 200).
+     * @param hitsPerSecond How often a car gets hit while others are shooting.
+     * @param seed Seed for the random hits, so runs can be repeated.
+     */
+    public SimulatedArena(int cars, ChecksumStrategy sum, double heartbeatMs, double hitsPerSecond, long seed) {
+        this(1, cars, sum, heartbeatMs, hitsPerSecond, seed);
+    }
+
+    /**
+     * Same as above, but the cars use team IDs firstTeam..firstTeam+cars-1.
+     * Use this to simulate several radios, each with its own group of cars.
+     */
+    public SimulatedArena(int firstTeam, int cars, ChecksumStrategy sum, double heartbeatMs, double hitsPerSecond, long seed) {
+        if (cars < 1 || firstTeam < 1 || firstTeam + cars - 1 > 254) {
+            throw new IllegalArgumentException("team IDs must be between 1 and 254");
+        }
+        if (sum == null) {
+            throw new IllegalArgumentException("sum must not be null");
+        }
+        this.firstTeam = firstTeam;
+        this.cars = cars;
+        this.sum = sum;
+        this.heartbeatNanos = Math.max(1_000L, (long) (heartbeatMs * 1_000_000));
+        // Tick 4 times per heartbeat, but at least every 5ms and at most every 100us
+        this.tickNanos = Math.max(100_000L, Math.min(5_000_000L, heartbeatNanos / 4));
+        this.hitChancePerTick = hitsPerSecond * tickNanos / 1e9;
+        this.rnd = new Random(seed);
+        this.cmdSync = new FrameSync(sum);
+
+        rgb = new int[cars + 1];
+        fireMode = new int[cars + 1];
+        beeps = new int[cars + 1];
+        light = new boolean[cars + 1];
+        nextHeartbeat = new long[cars + 1];
+    }
+
+    /**
+     * Starts the cars. Heartbeats are spread out so they do not all arrive at once.
+     */
+    @Override
+    public synchronized void open() {
+        if (unplugged) {
+            if (System.nanoTime() - replugAt < 0) throw new IllegalStateException("Simulated radio is unplugged");
+            unplugged = false;
+        }
+        if (open) return;
+        startNanos = System.nanoTime();
+        for (int t = 1; t <= cars; t++) {
+            light[t] = true;
+            nextHeartbeat[t] = startNanos + heartbeatNanos * t / cars;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread th = new Thread(r, "SimulatedArena");
+            th.setDaemon(true);
+            return th;
+        });
+        open = true;
+        ticker.scheduleAtFixedRate(this::tick, 0, tickNanos, TimeUnit.NANOSECONDS);
+        System.out.println("Simulated arena with " + cars + " car(s) started (teams " +
+                firstTeam + "-" + (firstTeam + cars - 1) + ")");
+    }
+
+    /**
+     * One step of the simulation: sensors, hits and heartbeats for every car.
+     */
+    private synchronized void tick() {
+        long now = System.nanoTime();
+
+        int shooters = 0;
+        for (int t = 1; t <= cars; t++) if (fireMode[t] == 2) shooters++;
+
+        // Cover and uncover the sensors while nobody is armed
+        if (autoArm && shooters == 0) {
+            long phase = ((now - startNanos) / 1_000_000) % ARM_CYCLE_MS;
+            boolean covered = phase >= 1000 && phase < 2000;
+            for (int t = 1; t <= cars; t++) light[t] = !covered;
+        }
+
+        for (int t = 1; t <= cars; t++) {
+            // Someone else must be shooting for this car to get hit
+            int others = shooters - (fireMode[t] == 2 ? 1 : 0);
+            boolean ir = others > 0 && rnd.nextDouble() < hitChancePerTick;
+            int team = firstTeam + t - 1;
+            if (ir) emit(team, FLAG_IR, 1);
+
+            if (now - nextHeartbeat[t] >= 0) {
+                nextHeartbeat[t] += heartbeatNanos;
+                // Do not pile up heartbeats if we fell behind
+                if (now - nextHeartbeat[t] >= 0) nextHeartbeat[t] = now + heartbeatNanos;
+                int flags = FLAG_HB;
+                if (light[t]) flags |= FLAG_LIGHT;
+                if (ir) flags |= FLAG_IR;
+                emit(team, flags, 1);
+            }
+        }
+    }
+
+    /**
+     * Puts one status frame into the receive buffer, just like sendStatus() in the firmware.
+     */
+    private void emit(int team, int flags, int value) {
+        byte a = (byte) team, b = (byte) flags, c = (byte) value;
+        byte s = sum.compute(a, b, c);
+        synchronized (rxLock) {
+            if (rxCount + 4 > RX_CAPACITY) {
+                // Like a real UART buffer: when it is full, new bytes are lost
+                bytesDropped += 4;
+                return;
+            }
+            put(a); put(b); put(c); put(s);
+            framesSent++;
+            rxLock.notifyAll();
+        }
+    }
+
+    private void put(byte b) {
+        rx[(rxHead + rxCount) % RX_CAPACITY] = b;
+        rxCount++;
+    }
+
+    @Override
+    public int read(byte[] buf, int len) {
+        if (unplugged) throw new IllegalStateException("Simulated radio unplugged");
+        if (!open) return -1;
+        if (buf == null || len <= 0) return 0;
+        synchronized (rxLock) {
+            if (rxCount == 0) {
+                try {
+                    rxLock.wait(READ_WAIT_MS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            int n = Math.min(Math.min(len, buf.length), rxCount);
+            for (int i = 0; i < n; i++) {
+                buf[i] = rx[rxHead];
+                rxHead = (rxHead + 1) % RX_CAPACITY;
+            }
+            rxCount -= n;
+            return n;
+        }
+    }
+
+    /**
+     * Receives command bytes from the PC and applies them to the cars.
+     */
+    @Override
+    public synchronized void write(byte[] buf) {
+        if (unplugged) throw new IllegalStateException("Simulated radio unplugged");
+        if (!open) throw new IllegalStateException("Simulated arena not open");
+        if (buf == null) return;
+        for (byte b : buf) {
+            if (cmdSync.push(b)) apply(cmdSync.frame());
+        }
+    }
+
+    /**
+     * Runs one command on the target car (or on every car for TEAM_ALL).
+     */
+    private void apply(int frame) {
+        int team = (frame >>> 24) & 0xFF;
+        int cmd  = (frame >>> 16) & 0xFF;
+        int arg  = (frame >>> 8) & 0xFF;
+        commands++;
+
+        int from, to;
+        if (team == (Commands.TEAM_ALL & 0xFF)) { from = 1; to = cars; }
+        else if (owns(team)) { from = to = team - firstTeam + 1; }
+        else return;
+
+        for (int t = from; t <= to; t++) {
+            if (cmd == Commands.CMD_SET_RGB) rgb[t] = arg;
+            else if (cmd == Commands.CMD_BEEP) beeps[t]++;
+            else if (cmd == Commands.CMD_FIREMODE) fireMode[t] = arg;
+        }
+    }
+
+    // --- MANUAL CONTROL AND INSPECTION ---
+
+    /**
+     * Covers (false) or uncovers (true) one car's light sensor.
+     * Turns off the automatic arm loop.
+     */
+    public synchronized void setLight(int team, boolean bright) {
+        autoArm = false;
+        light[team - firstTeam + 1] = bright;
+    }
+
+    /**
+     * Simulates pulling the dongle's USB cable: reads and writes fail from now on,
+     * and open() fails until 'downMs' has passed. The cars keep their state.
+     */
+    public void unplug(long downMs) {
+        replugAt = System.nanoTime() + downMs * 1_000_000L;
+        unplugged = true;
+        // Wake a reader waiting for bytes, so it notices right away
+        synchronized (rxLock) { rxLock.notifyAll(); }
+    }
+
+    // Checks if a team ID is one of this arena's cars
+    public boolean owns(int team) { return team >= firstTeam && team < firstTeam + cars; }
+
+    // State of one car (by team ID)
+    public synchronized int rgb(int team) { return rgb[team - firstTeam + 1]; }
+    public synchronized int fireMode(int team) { return fireMode[team - firstTeam + 1]; }
+    public synchronized int beeps(int team) { return beeps[team - firstTeam + 1]; }
+    public synchronized long commands() { return commands; }
+    public int cars() { return cars; }
+
+    public long framesSent() { synchronized (rxLock) { return framesSent; } }
+    public long bytesDropped() { synchronized (rxLock) { return bytesDropped; } }
+
+    @Override
+    public boolean isOpen() { return open; }
+
+    @Override
+    public synchronized void close() {
+        if (!open) return;
+        open = false;
+        ticker.shutdownNow();
+        synchronized (rxLock) { rxLock.notifyAll(); }
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedArena(teams " + firstTeam + "-" + (firstTeam + cars - 1) + ")";
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A load test for the SpectatorServer: opens many spectator connections from
+ * one thread and checks the messages they get.
+ * Some connections can be "slow" (they never read), to see that the server
+ * disconnects them instead of slowing down.
+ *
+ * Usage:
+ *   java SpectatorLoadClient HOST:PORT CLIENTS SECONDS [SLOW]
+ *   java SpectatorLoadClient selftest CLIENTS SECONDS [SLOW]
+ * "selftest" starts a server in this program and feeds it fake snapshots
+ * (-Drate=N snapshots per second, default 200), all over loopback.
+ */
+public class SpectatorLoadClient {
+
+    // One spectator connection and what it saw
+    private static final class Conn {
+        final ByteBuffer in = ByteBuffer.allocate(64 * 1024);
+        long version = -1;
+        // Version of the FULL message we started from
+        long fullVersion = -1;
+        long messages = 0;
+        long stale = 0;
+        int[] hp = new int[0];
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: java SpectatorLoadClient HOST:PORT|selftest CLIENTS SECONDS [SLOW]");
+            System.exit(2);
+        }
+        int clients = Integer.parseInt(args[1]);
+        int seconds = Integer.parseInt(args[2]);
+        int slow = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        SpectatorServer server = null;
+        Thread feeder = null;
+        InetSocketAddress addr;
+        if (args[0].equals("selftest")) {
+            server = new SpectatorServer(0);
+            addr = new InetSocketAddress("127.0.0.1", server.port());
+            feeder = startFeeder(server, Integer.getInteger("rate", 200));
+        } else {
+            String[] hp = args[0].split(":");
+            addr = new InetSocketAddress(hp[0], Integer.parseInt(hp[1]));
+        }
+
+        Selector sel = Selector.open();
+        SocketChannel[] slowChannels = new SocketChannel[slow];
+        for (int i = 0; i < clients + slow; i++) {
+            SocketChannel ch = SocketChannel.open();
+            if (i >= clients) ch.setOption(StandardSocketOptions.SO_RCVBUF, 1024);
+            ch.connect(addr);
+            ch.configureBlocking(false);
+            if (i < clients) ch.register(sel, SelectionKey.OP_READ, new Conn());
+            else slowChannels[i - clients] = ch;
+        }
+        System.out.println("Connected " + clients + " spectators (+" + slow + " slow) to " + addr);
+
+        long bytes = 0, closed = 0;
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() - end < 0) {
+            sel.select(100);
+            Iterator<SelectionKey> it = sel.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey k = it.next();
+                it.remove();
+                Conn c = (Conn) k.attachment();
+                int n;
+                try {
+                    n = ((SocketChannel) k.channel()).read(c.in);
+                } catch (IOException e) {
+                    n = -1;
+                }
+                if (n < 0) {
+                    closed++;
+                    k.cancel();
+                    k.channel().close();
+                    continue;
+                }
+                bytes += n;
+                parse(c);
+            }
+        }
+
+        long messages = 0, stale = 0;
+        long minVersion = Long.MAX_VALUE, maxVersion = -1;
+        for (SelectionKey k : sel.keys()) {
+            Conn c = (Conn) k.attachment();
+            messages += c.messages;
+            stale += c.stale;
+            minVersion = Math.min(minVersion, c.version);
+            maxVersion = Math.max(maxVersion, c.version);
+        }
+        System.out.printf("Received %d messages, %.1f MB in %d s (%.0f msg/s), %d skipped as stale%n",
+                messages, bytes / 1e6, seconds, messages / (double) seconds, stale);
+        System.out.println("Connections closed by server: " + closed +
+                ", versions seen: " + minVersion + ".." + maxVersion);
+
+        if (feeder != null) feeder.interrupt();
+        if (server != null) {
+            System.out.println(server);
+            server.close();
+        }
+        for (SocketChannel ch : slowChannels) ch.close();
+        sel.close();
+    }
+
+    /**
+     * Reads every complete message in the buffer.
+     */
+    private static void parse(Conn c) {
+        ByteBuffer b = c.in;
+        b.flip();
+        while (b.remaining() >= 2) {
+            int len = b.getShort(b.position()) & 0xFFFF;
+            if (b.remaining() < 2 + len) break;
+            b.getShort();
+            int end = b.position() + len;
+            int type = b.get();
+            long version = b.getLong();
+            if (type != SpectatorServer.MSG_FULL && (version <= c.fullVersion || version < c.version)) {
+                // Already part of the FULL state we got
+                c.stale++;
+            } else if (type == SpectatorServer.MSG_FULL) {
+                b.get(); // running
+                int teams = b.get() & 0xFF;
+                c.hp = new int[teams + 1];
+                for (int t = 1; t <= teams; t++) c.hp[t] = b.get() & 0xFF;
+                c.version = version;
+                c.fullVersion = version;
+            } else if (type == SpectatorServer.MSG_HP) {
+                int count = b.get() & 0xFF;
+                for (int i = 0; i < count; i++) {
+                    int team = b.get() & 0xFF;
+                    int hp = b.get() & 0xFF;
+                    if (team < c.hp.length) c.hp[team] = hp;
+                }
+                c.version = version;
+            } else {
+                c.version = version;
+            }
+            c.messages++;
+            b.position(end);
+        }
+        b.compact();
+    }
+
+    /**
+     * Feeds the server fake snapshots: hits on random teams and status changes.
+     */
+    private static Thread startFeeder(SpectatorServer server, int rate) {
+        Thread t = new Thread(() -> {
+            int teams = 8;
+            int[] hp = new int[teams + 1];
+            Arrays.fill(hp, 100);
+            boolean[] bright = new boolean[teams + 1];
+            Random rnd = new Random(1);
+            long pauseNanos = 1_000_000_000L / Math.max(1, rate);
+            for (long v = 1; !Thread.currentThread().isInterrupted(); v++) {
+                int team = 1 + rnd.nextInt(teams);
+                hp[team] = hp[team] <= 0 ? 100 : hp[team] - 10;
+                String msg = (v % 10 == 0) ? "Status " + v : "Hit on Team " + team + "!";
+                server.onSnapshot(new GameSnapshot(v, hp.clone(), bright, msg, true));
+                LockSupport.parkNanos(pauseNanos);
+            }
+        }, "Feeder");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+}
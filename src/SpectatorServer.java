@@ -0,0 +1,310 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends the live game state to spectator programs over plain TCP.
+ * It is a GameStateListener: for every snapshot the engine only encodes a
+ * small binary message and queues it. One selector thread does all socket
+ * work, so a slow or dead spectator can never block the engine.
+ * Every client has its own send buffer; a client that falls so far behind
+ * that the buffer overflows is disconnected.
+ *
+ * Wire format (all numbers big-endian). Every message is [length: 2][body]:
+ *   FULL  [1][version: 8][running: 1][teams: 1][hp: 1 per team][msgLen: 2][msg: UTF-8]
+ *   HP    [2][version: 8][count: 1] then count x [team: 1][hp: 1]
+ *   STATE [3][version: 8][running: 1][msgLen: 2][msg: UTF-8]
+ * A new client gets one FULL message, then only HP and STATE deltas.
+ * Deltas carry absolute values, and a client may see a delta it already has
+ * in its FULL message; it can skip messages whose version is not newer.
+ */
+public class SpectatorServer implements GameStateListener, AutoCloseable {
+    public static final int MSG_FULL = 1;
+    public static final int MSG_HP = 2;
+    public static final int MSG_STATE = 3;
+
+    // Default send buffer per client
+    private static final int DEFAULT_CLIENT_BUFFER = 16 * 1024;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final int clientBuffer;
+    private final Thread loop;
+    private volatile boolean running = true;
+
+    // Messages from the engine, waiting for the selector thread
+    private final ConcurrentLinkedQueue<byte[]> outbox = new ConcurrentLinkedQueue<>();
+    // True while a wakeup is already on its way (saves system calls)
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+
+    // Scratch buffer for reading from clients (selector thread only)
+    private final ByteBuffer junk = ByteBuffer.allocate(256);
+
+    // The last snapshot we turned into messages (guarded by 'this')
+    private GameSnapshot last;
+
+    // --- STATISTICS ---
+    private volatile int clients = 0;
+    private volatile long accepted = 0;
+    private volatile long evicted = 0;
+    private volatile long messages = 0;
+
+    // One connected spectator and the bytes still to send to it
+    private static final class Client {
+        final SocketChannel ch;
+        final ByteBuffer out;
+
+        Client(SocketChannel ch, int capacity) {
+            this.ch = ch;
+            this.out = ByteBuffer.allocateDirect(capacity);
+        }
+    }
+
+    public SpectatorServer(int port) {
+        this(port, DEFAULT_CLIENT_BUFFER);
+    }
+
+    /**
+     * Opens the port and starts the selector thread.
+     * @param port TCP port to listen on (0 = any free port, see port()).
+     * @param clientBuffer Bytes we keep for each client before disconnecting it.
+     */
+    public SpectatorServer(int port, int clientBuffer) {
+        if (clientBuffer < 1024) {
+            throw new IllegalArgumentException("clientBuffer must be at least 1024 bytes");
+        }
+        this.clientBuffer = clientBuffer;
+        try {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(port), 1024);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open spectator port " + port, e);
+        }
+        loop = new Thread(this::selectLoop, "Spectators");
+        loop.setDaemon(true);
+        loop.start();
+    }
+
+    // --- ENGINE SIDE ---
+
+    /**
+     * Turns the change since the last snapshot into HP/STATE messages and queues them.
+     */
+    @Override
+    public synchronized void onSnapshot(GameSnapshot s) {
+        GameSnapshot prev = last;
+        last = s;
+        if (prev == null || prev.teams() != s.teams()) {
+            send(full(s));
+            return;
+        }
+
+        int changed = 0;
+        for (int t = 1; t <= s.teams(); t++) if (s.hp(t) != prev.hp(t)) changed++;
+        if (changed > 0) {
+            ByteBuffer b = message(MSG_HP, 1 + 2 * changed, s.version());
+            b.put((byte) changed);
+            for (int t = 1; t <= s.teams(); t++) {
+                if (s.hp(t) != prev.hp(t)) b.put((byte) t).put((byte) s.hp(t));
+            }
+            send(b.array());
+        }
+        if (!s.message().equals(prev.message()) || s.running() != prev.running()) {
+            byte[] text = s.message().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer b = message(MSG_STATE, 1 + 2 + text.length, s.version());
+            b.put((byte) (s.running() ? 1 : 0)).putShort((short) text.length).put(text);
+            send(b.array());
+        }
+    }
+
+    // Not used: the engine sends snapshots
+    @Override
+    public void onHpUpdate(int team, int hp) {}
+
+    @Override
+    public void onState(String text) {}
+
+    // Builds a FULL message for a snapshot
+    private static byte[] full(GameSnapshot s) {
+        byte[] text = s.message().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer b = message(MSG_FULL, 1 + 1 + s.teams() + 2 + text.length, s.version());
+        b.put((byte) (s.running() ? 1 : 0)).put((byte) s.teams());
+        for (int t = 1; t <= s.teams(); t++) b.put((byte) s.hp(t));
+        b.putShort((short) text.length).put(text);
+        return b.array();
+    }
+
+    // Starts a message: length, type and version; 'extra' bytes follow
+    private static ByteBuffer message(int type, int extra, long version) {
+        int body = 1 + 8 + extra;
+        ByteBuffer b = ByteBuffer.allocate(2 + body);
+        b.putShort((short) body).put((byte) type).putLong(version);
+        return b;
+    }
+
+    // Hands a message to the selector thread
+    private void send(byte[] msg) {
+        outbox.add(msg);
+        if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    // --- SELECTOR THREAD ---
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select(1000);
+                wakeupPending.set(false);
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey k = it.next();
+                    it.remove();
+                    if (!k.isValid()) continue;
+                    if (k.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (k.isReadable()) read(k);
+                    if (k.isValid() && k.isWritable()) flush(k);
+                }
+
+                // Add all new messages to every buffer, then write once per client
+                byte[] msg;
+                boolean any = false;
+                while ((msg = outbox.poll()) != null) {
+                    fanOut(msg);
+                    any = true;
+                }
+                if (any) {
+                    for (SelectionKey k : selector.keys()) {
+                        if (k.isValid() && k.attachment() instanceof Client) flush(k);
+                    }
+                }
+            } catch (IOException e) {
+                AsyncLog.error("Spectator server error: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            Client c = new Client(ch, clientBuffer);
+            SelectionKey k = ch.register(selector, SelectionKey.OP_READ, c);
+            accepted++;
+            clients++;
+            // Start the new client with the whole current state
+            GameSnapshot s;
+            synchronized (this) { s = last; }
+            if (s != null && append(k, full(s))) flush(k);
+        }
+    }
+
+    // Spectators do not send anything; reading only tells us when they hang up
+    private void read(SelectionKey k) {
+        junk.clear();
+        try {
+            if (((Client) k.attachment()).ch.read(junk) < 0) drop(k, false);
+        } catch (IOException e) {
+            drop(k, false);
+        }
+    }
+
+    // Puts one message into every client's buffer
+    private void fanOut(byte[] msg) {
+        messages++;
+        for (SelectionKey k : selector.keys()) {
+            if (k.isValid() && k.attachment() instanceof Client) append(k, msg);
+        }
+    }
+
+    /**
+     * Adds a message to one client's buffer.
+     * @return false if the client was too slow and got disconnected.
+     */
+    private boolean append(SelectionKey k, byte[] msg) {
+        Client c = (Client) k.attachment();
+        if (c.out.remaining() < msg.length) {
+            // This client is too slow to keep up
+            drop(k, true);
+            return false;
+        }
+        c.out.put(msg);
+        return true;
+    }
+
+    // Writes as much of the client's buffer as the socket takes
+    private void flush(SelectionKey k) {
+        Client c = (Client) k.attachment();
+        try {
+            c.out.flip();
+            c.ch.write(c.out);
+            c.out.compact();
+            // Ask to be told when the socket has room again, if something is left
+            int ops = (c.out.position() > 0) ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            if (k.interestOps() != ops) k.interestOps(ops);
+        } catch (IOException e) {
+            drop(k, false);
+        }
+    }
+
+    private void drop(SelectionKey k, boolean slow) {
+        if (!k.isValid()) return;
+        k.cancel();
+        try {
+            ((Client) k.attachment()).ch.close();
+        } catch (IOException ignored) {}
+        clients--;
+        if (slow) evicted++;
+    }
+
+    // --- INFO ---
+
+    // The port we really listen on
+    public int port() { return server.socket().getLocalPort(); }
+    public int clients() { return clients; }
+    public long accepted() { return accepted; }
+    // Clients disconnected because they could not keep up
+    public long evicted() { return evicted; }
+    // Messages sent to all clients
+    public long messages() { return messages; }
+
+    /**
+     * Disconnects everyone and closes the port.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            loop.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            for (SelectionKey k : selector.keys()) k.channel().close();
+            selector.close();
+        } catch (IOException ignored) {}
+    }
+
+    @Override
+    public String toString() {
+        return "SpectatorServer(port " + port() + ", clients=" + clients + ", accepted=" + accepted +
+                ", evicted=" + evicted + ", messages=" + messages + ")";
+    }
+}
@@ -11,4 +11,32 @@ public class SumModuloChecksum implements ChecksumStrategy {
         int s = (a & 0xFF) + (b & 0xFF) + (c & 0xFF);
         return (byte)(s & 0xFF);
     }
-}
\ No newline at end of file
+
+    /**
+     * Batch check on packed frames: adds up the three data bytes of each int.
+     */
+    @Override
+    public int filterValid(int[] frames, int off, int len) {
+        int kept = off;
+        for (int i = off, end = off + len; i < end; i++) {
+            int f = frames[i];
+            int s = (f >>> 24) + ((f >>> 16) & 0xFF) + ((f >>> 8) & 0xFF);
+            if (((s ^ f) & 0xFF) == 0) frames[kept++] = f;
+        }
+        return kept - off;
+    }
+
+    @Override
+    public int filterValid(int[] frames, long[] stamps, int off, int len) {
+        int kept = off;
+        for (int i = off, end = off + len; i < end; i++) {
+            int f = frames[i];
+            int s = (f >>> 24) + ((f >>> 16) & 0xFF) + ((f >>> 8) & 0xFF);
+            if (((s ^ f) & 0xFF) == 0) {
+                stamps[kept] = stamps[i];
+                frames[kept++] = f;
+            }
+        }
+        return kept - off;
+    }
+}
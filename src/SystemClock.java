@@ -0,0 +1,52 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The real clock: System.nanoTime() for the time, and a scheduler thread
+ * for delayed tasks.
+ */
+public class SystemClock implements GameClock {
+    private final ScheduledExecutorService exec;
+
+    /**
+     * @param exec The scheduler that runs the tasks. Use ONE thread, so tasks
+     *             with the same time run in the order they were added.
+     */
+    public SystemClock(ScheduledExecutorService exec) {
+        if (exec == null) {
+            throw new IllegalArgumentException("exec must not be null");
+        }
+        this.exec = exec;
+    }
+
+    // The shared clock, created the first time someone asks for it
+    private static final class Shared {
+        static final SystemClock INSTANCE = new SystemClock(Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Timeline");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    /**
+     * The clock shared by the whole application (one daemon scheduler thread).
+     */
+    public static SystemClock shared() { return Shared.INSTANCE; }
+
+    @Override
+    public long millis() { return System.nanoTime() / 1_000_000; }
+
+    @Override
+    public long nanos() { return System.nanoTime(); }
+
+    @Override
+    public Task schedule(Runnable task, long delayMs) {
+        ScheduledFuture<?> f = exec.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        return () -> f.cancel(false);
+    }
+
+    @Override
+    public String toString() { return "SystemClock"; }
+}
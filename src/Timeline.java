@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays timed sequences of steps (like the LED/beep start animation) without
+ * holding a thread per sequence.
+ * A Sequence is a list of "at X ms, do this" steps. play() schedules all of them
+ * on a GameClock (normally one shared scheduler thread) and returns a Cue that
+ * can be cancelled.
+ * Many sequences can run at the same time, and replace() cancels an old one
+ * before starting the new one.
+ */
+public class Timeline {
+    private final GameClock clock;
+
+    /**
+     * @param exec The scheduler that runs the steps. Use ONE thread, so steps
+     *             with the same time run in the order they were added.
+     */
+    public Timeline(ScheduledExecutorService exec) {
+        this(new SystemClock(exec));
+    }
+
+    /**
+     * @param clock The clock that times and runs the steps (a ManualClock for replays).
+     */
+    public Timeline(GameClock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("clock must not be null");
+        }
+        this.clock = clock;
+    }
+
+    // The shared timeline, created the first time someone asks for it
+    private static final class Shared {
+        static final Timeline INSTANCE = new Timeline(SystemClock.shared());
+    }
+
+    /**
+     * The timeline shared by the whole application (one daemon thread).
+     */
+    public static Timeline shared() { return Shared.INSTANCE; }
+
+    /**
+     * The clock this timeline runs on. Users of the timeline read the time from it too.
+     */
+    public GameClock clock() { return clock; }
+
+    /**
+     * A list of timed steps. Build it once, then play it.
+     */
+    public static final class Sequence {
+        private final String name;
+        private final List<Long> times = new ArrayList<>();
+        private final List<Runnable> steps = new ArrayList<>();
+
+        public Sequence(String name) { this.name = name; }
+
+        /**
+         * Adds a step.
+         * @param ms Time from the start of the sequence, in milliseconds.
+         * @param step What to do at that time.
+         */
+        public Sequence at(long ms, Runnable step) {
+            if (ms < 0) throw new IllegalArgumentException("ms must not be negative");
+            times.add(ms);
+            steps.add(step);
+            return this;
+        }
+
+        @Override
+        public String toString() { return "Sequence(" + name + ", " + steps.size() + " steps)"; }
+    }
+
+    /**
+     * A sequence that is playing. Cancel it to skip all steps that did not run yet.
+     */
+    public static final class Cue {
+        private final String name;
+        private final GameClock.Task[] tasks;
+        private final AtomicInteger remaining;
+        private volatile boolean cancelled = false;
+
+        private Cue(String name, int steps) {
+            this.name = name;
+            this.tasks = new GameClock.Task[steps];
+            this.remaining = new AtomicInteger(steps);
+        }
+
+        /**
+         * Stops the sequence. Steps that already ran are not undone.
+         */
+        public void cancel() {
+            cancelled = true;
+            for (GameClock.Task t : tasks) if (t != null) t.cancel();
+        }
+
+        public boolean isCancelled() { return cancelled; }
+
+        // True when every step ran or the cue was cancelled
+        public boolean isDone() { return cancelled || remaining.get() == 0; }
+
+        @Override
+        public String toString() { return "Cue(" + name + (cancelled ? ", cancelled" : "") + ")"; }
+    }
+
+    /**
+     * Starts playing a sequence.
+     * @return A Cue to cancel it.
+     */
+    public Cue play(Sequence s) {
+        Cue cue = new Cue(s.name, s.steps.size());
+        for (int i = 0; i < s.steps.size(); i++) {
+            Runnable step = s.steps.get(i);
+            cue.tasks[i] = clock.schedule(() -> {
+                if (cue.cancelled) return;
+                try {
+                    step.run();
+                } catch (Throwable t) {
+                    // Keep the timeline alive even if one step fails
+                    AsyncLog.error("Error in " + s + ":", t);
+                } finally {
+                    cue.remaining.decrementAndGet();
+                }
+            }, s.times.get(i));
+        }
+        return cue;
+    }
+
+    /**
+     * Cancels the old cue (if any) and starts the new sequence (if any).
+     * @return The new Cue, or null if 's' is null.
+     */
+    public Cue replace(Cue old, Sequence s) {
+        if (old != null) old.cancel();
+        return (s == null) ? null : play(s);
+    }
+}
@@ -0,0 +1,419 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * A send queue for ONE serial port, with its own writer thread.
+ * The XBee link only moves about 960 bytes per second at 9600 baud, so instead
+ * of sleeping between commands, everything goes through this queue:
+ * - Frames are sent in priority order: fire modes first, then beeps, then
+ *   LED colors.
+ * - A new LED color or fire mode for a team replaces one that is still
+ *   waiting, and a broadcast replaces all waiting team values. So a waiting
+ *   "guns on" can never go out after a newer "guns off" (SAFETY).
+ * - LED colors and fire modes that match what was last written are dropped.
+ *   Safety frames are never dropped.
+ * - Output is paced to the link's byte budget, and all frames that fit into
+ *   the budget are packed into one write() call.
+ */
+public class TransmitQueue implements AutoCloseable {
+    private static final int TEAM_ALL = Commands.TEAM_ALL & 0xFF;
+    private static final int NONE = -1;
+    // At most this many frames are packed into one write
+    private static final int MAX_BATCH = 8;
+    // At most this many frames wait in each priority class; the oldest is dropped after that
+    private static final int MAX_PENDING = 256;
+
+    private final SerialEndpoint port;
+    private final String name;
+    // Link budget in bytes per nanosecond, and the biggest burst we allow
+    private final double bytesPerNano;
+    private final double burstBytes;
+
+    // --- WAITING FRAMES (guarded by 'this') ---
+    // Newest fire mode frame per target (sent first)
+    private final Slots fire = new Slots();
+    // FIFO queue for beeps and other commands (packed ints)
+    private final ArrayDeque<Integer> beeps = new ArrayDeque<>();
+    // Newest LED frame per target (sent last)
+    private final Slots rgb = new Slots();
+
+    // --- LAST WRITTEN STATE (guarded by 'this') ---
+    private final int[] lastRgb = new int[256];
+    private final int[] lastFire = new int[256];
+
+    // When the last hit beep per team was queued, and the receive stamp of its hit (latency stats)
+    private final long[] hitQueued = new long[256];
+    private final long[] hitRx = new long[256];
+
+    // Reusable packed buffers, one per batch size
+    private final byte[][] batchBufs = new byte[MAX_BATCH + 1][];
+
+    // Byte credit for pacing
+    private double credit;
+    private long creditTime;
+
+    // --- STATISTICS ---
+    private volatile long framesSent = 0;
+    private volatile long writes = 0;
+    private volatile long coalesced = 0;
+    private volatile long deduplicated = 0;
+    private volatile long dropped = 0;
+    private volatile long writeErrors = 0;
+    // Frames sent per command ID (index 0 = unknown commands)
+    private final long[] sentByCmd = new long[Commands.CMD_FIREMODE + 1];
+
+    // Records every frame that was written (null = off)
+    private volatile MatchJournal journal;
+    private volatile int journalPort;
+
+    private final Thread writer;
+    private volatile boolean running = true;
+    // True while the writer sleeps in wait() (guarded by 'this')
+    private boolean writerWaiting = false;
+
+    /**
+     * Creates the queue and starts its writer thread.
+     * @param port The port this queue writes to.
+     * @param baud Link speed, used for pacing (8N1 = 10 bits per byte).
+     */
+    public TransmitQueue(SerialEndpoint port, int baud) {
+        if (port == null) {
+            throw new IllegalArgumentException("port must not be null");
+        }
+        if (baud <= 0) {
+            throw new IllegalArgumentException("baud must be positive");
+        }
+        this.port = port;
+        this.name = port.toString();
+        this.bytesPerNano = (baud / 10.0) / 1e9;
+        this.burstBytes = MAX_BATCH * 4;
+        for (int i = 1; i <= MAX_BATCH; i++) batchBufs[i] = new byte[i * 4];
+        Arrays.fill(lastRgb, NONE);
+        Arrays.fill(lastFire, NONE);
+
+        credit = burstBytes;
+        creditTime = System.nanoTime();
+
+        writer = new Thread(this::writeLoop, "TX-" + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a 4-byte command frame. Never blocks on the port.
+     */
+    public void submit(byte[] frame) {
+        if (frame == null || frame.length != 4) return;
+        int f = (frame[0] & 0xFF) << 24 | (frame[1] & 0xFF) << 16
+              | (frame[2] & 0xFF) << 8 | (frame[3] & 0xFF);
+        int target = frame[0] & 0xFF;
+        int cmd = frame[1];
+        int arg = frame[2] & 0xFF;
+
+        synchronized (this) {
+            if (cmd == Commands.CMD_SET_RGB) {
+                coalesced += rgb.put(target, f);
+            } else if (cmd == Commands.CMD_FIREMODE) {
+                coalesced += fire.put(target, f);
+            } else {
+                queue(beeps, f);
+                if (LatencyStats.ENABLED && cmd == Commands.CMD_BEEP && arg == 1) {
+                    hitQueued[target] = System.nanoTime();
+                    hitRx[target] = LatencyStats.takeHitRx();
+                }
+            }
+            // Only wake the writer if it is sleeping
+            if (writerWaiting) notifyAll();
+        }
+    }
+
+    /**
+     * Adds a frame to the FIFO queue. If the link cannot keep up, the oldest frame is dropped.
+     */
+    private void queue(ArrayDeque<Integer> q, int f) {
+        if (q.size() >= MAX_PENDING) {
+            q.poll();
+            dropped++;
+        }
+        q.add(f);
+    }
+
+    /**
+     * Forgets what was last sent, so the next LED and fire mode frames go out
+     * even if they match (e.g. after the car was reset or the port reconnected).
+     */
+    public synchronized void invalidate() {
+        Arrays.fill(lastRgb, NONE);
+        Arrays.fill(lastFire, NONE);
+    }
+
+    /**
+     * Records every frame this queue writes in a journal. Null turns it off.
+     * @param port The port index stored in the records.
+     */
+    public void setJournal(MatchJournal journal, int port) {
+        this.journalPort = port;
+        this.journal = journal;
+    }
+
+    /**
+     * The writer thread: waits for frames and budget, then packs and writes them.
+     */
+    private void writeLoop() {
+        int[] batch = new int[MAX_BATCH];
+        while (running) {
+            int n;
+            try {
+                n = nextBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (n == 0) continue;
+
+            byte[] out = batchBufs[n];
+            for (int i = 0; i < n; i++) {
+                int f = batch[i];
+                out[i * 4]     = (byte) (f >>> 24);
+                out[i * 4 + 1] = (byte) (f >>> 16);
+                out[i * 4 + 2] = (byte) (f >>> 8);
+                out[i * 4 + 3] = (byte) f;
+            }
+            try {
+                if (port.isOpen()) {
+                    port.write(out);
+                    writes++;
+                    framesSent += n;
+                    // Only now do the cars really know these colors and fire modes
+                    sent(batch, n);
+                    if (LatencyStats.ENABLED) hitLatency(batch, n);
+                    MatchJournal j = journal;
+                    if (j != null) {
+                        long now = System.nanoTime();
+                        for (int i = 0; i < n; i++) j.append(MatchJournal.TX, journalPort, batch[i], now);
+                    }
+                }
+            } catch (RuntimeException e) {
+                writeErrors++;
+                AsyncLog.error("TX error on " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Records a written batch: the per-command counters and the last written
+     * LED colors and fire modes. Frames that were never written (port closed,
+     * write failed) are not recorded, so the next identical frame still goes out.
+     */
+    private synchronized void sent(int[] batch, int n) {
+        for (int i = 0; i < n; i++) {
+            int f = batch[i];
+            int target = (f >>> 24) & 0xFF;
+            int cmd = (f >>> 16) & 0xFF;
+            int arg = (f >>> 8) & 0xFF;
+            sentByCmd[cmd < sentByCmd.length ? cmd : 0]++;
+
+            int[] last;
+            if (cmd == Commands.CMD_SET_RGB) last = lastRgb;
+            else if (cmd == Commands.CMD_FIREMODE) last = lastFire;
+            else continue;
+            if (target == TEAM_ALL) {
+                Arrays.fill(last, arg);
+            } else {
+                last[target] = arg;
+                last[TEAM_ALL] = NONE;
+            }
+        }
+    }
+
+    /**
+     * Records how long the hit beeps in a written batch took.
+     */
+    private synchronized void hitLatency(int[] batch, int n) {
+        long now = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            int f = batch[i];
+            if (((f >>> 16) & 0xFF) != Commands.CMD_BEEP || ((f >>> 8) & 0xFF) != 1) continue;
+            int target = f >>> 24;
+            if (hitQueued[target] == 0) continue;
+            LatencyStats.TX_QUEUE.record(now - hitQueued[target]);
+            if (hitRx[target] != 0) LatencyStats.HIT_TO_TX.record(now - hitRx[target]);
+            hitQueued[target] = 0;
+            hitRx[target] = 0;
+        }
+    }
+
+    /**
+     * Waits until there are frames and enough byte credit, then takes as many
+     * frames as the credit allows, in priority order.
+     * @return Number of frames put into 'batch'.
+     */
+    private synchronized int nextBatch(int[] batch) throws InterruptedException {
+        while (running && isEmpty()) pause(0);
+        if (!running) return 0;
+
+        // Wait for enough credit for at least one frame
+        refill();
+        if (credit < 4) {
+            long waitNanos = (long) ((4 - credit) / bytesPerNano);
+            pause(Math.max(1, waitNanos / 1_000_000));
+            return 0;
+        }
+
+        int n = 0;
+        while (n < batch.length && credit >= 4) {
+            int f = take();
+            if (f == NONE) break;
+            if (isDuplicate(f)) {
+                deduplicated++;
+                continue;
+            }
+            batch[n++] = f;
+            credit -= 4;
+        }
+        return n;
+    }
+
+    // Sleeps until submit() or close() wakes us (or the time runs out, 0 = no limit)
+    private void pause(long ms) throws InterruptedException {
+        writerWaiting = true;
+        try {
+            wait(ms);
+        } finally {
+            writerWaiting = false;
+        }
+    }
+
+    // Adds the credit earned since the last call
+    private void refill() {
+        long now = System.nanoTime();
+        credit = Math.min(burstBytes, credit + (now - creditTime) * bytesPerNano);
+        creditTime = now;
+    }
+
+    private boolean isEmpty() {
+        return fire.isEmpty() && beeps.isEmpty() && rgb.isEmpty();
+    }
+
+    /**
+     * Takes the next frame in priority order.
+     * @return The frame, or NONE if everything is empty.
+     */
+    private int take() {
+        if (!fire.isEmpty()) return fire.take();
+        if (!beeps.isEmpty()) return beeps.poll();
+        return rgb.take();
+    }
+
+    /**
+     * Checks a frame against the last written state.
+     * @return true if the frame would not change anything and can be dropped.
+     */
+    private boolean isDuplicate(int f) {
+        int target = (f >>> 24) & 0xFF;
+        int cmd = (f >>> 16) & 0xFF;
+        int arg = (f >>> 8) & 0xFF;
+
+        int[] last;
+        if (cmd == Commands.CMD_SET_RGB) last = lastRgb;
+        else if (cmd == Commands.CMD_FIREMODE) last = lastFire;
+        else return false;
+
+        // Safety is never dropped
+        return !(cmd == Commands.CMD_FIREMODE && arg == 0) && last[target] == arg;
+    }
+
+    // --- STATISTICS ---
+
+    public long framesSent() { return framesSent; }
+    public long writes() { return writes; }
+    public long coalesced() { return coalesced; }
+    public long deduplicated() { return deduplicated; }
+    public long dropped() { return dropped; }
+    public long writeErrors() { return writeErrors; }
+
+    /**
+     * Number of frames sent with one command ID (Commands.CMD_SET_RGB, ...).
+     */
+    public synchronized long sent(int cmd) {
+        return (cmd > 0 && cmd < sentByCmd.length) ? sentByCmd[cmd] : sentByCmd[0];
+    }
+
+    // The port this queue writes to
+    public SerialEndpoint port() { return port; }
+
+    /**
+     * Number of frames waiting to be sent.
+     */
+    public synchronized int pending() {
+        return fire.size() + beeps.size() + rgb.size();
+    }
+
+    /**
+     * Stops the writer thread. Frames still waiting are dropped.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+            notifyAll();
+        }
+        writer.interrupt();
+    }
+
+    @Override
+    public String toString() {
+        return "TransmitQueue(" + name + ", sent=" + framesSent + ", writes=" + writes +
+                ", coalesced=" + coalesced + ", deduplicated=" + deduplicated +
+                ", dropped=" + dropped + ")";
+    }
+
+    /**
+     * The newest waiting frame per target (team ID or 0xFF), in the order the
+     * targets were added. A broadcast replaces every waiting team frame, and a
+     * team frame added after a broadcast goes out after it.
+     */
+    private static final class Slots {
+        private final int[] pending = new int[256];
+        private final ArrayDeque<Integer> order = new ArrayDeque<>();
+
+        Slots() {
+            Arrays.fill(pending, NONE);
+        }
+
+        /**
+         * @return How many waiting frames the new one replaced.
+         */
+        int put(int target, int f) {
+            int replaced = 0;
+            if (target == TEAM_ALL) {
+                for (int t : order) {
+                    if (t != TEAM_ALL) {
+                        pending[t] = NONE;
+                        replaced++;
+                    }
+                }
+                order.removeIf(t -> t != TEAM_ALL);
+            }
+            if (pending[target] != NONE) {
+                replaced++;
+            } else {
+                order.add(target);
+            }
+            pending[target] = f;
+            return replaced;
+        }
+
+        // The oldest waiting frame, or NONE
+        int take() {
+            Integer target = order.poll();
+            if (target == null) return NONE;
+            int f = pending[target];
+            pending[target] = NONE;
+            return f;
+        }
+
+        boolean isEmpty() { return order.isEmpty(); }
+        int size() { return order.size(); }
+    }
+}
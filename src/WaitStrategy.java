@@ -0,0 +1,113 @@
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Defines how a consumer waits when its FrameRing is empty.
+ * BLOCKING:  spins a little, then parks the thread until the producer wakes it (lowest CPU).
+ * YIELDING:  spins a little, then gives the CPU to other threads (low latency, some CPU).
+ * BUSY_SPIN: never lets go of the CPU (lowest latency, one full core).
+ */
+public interface WaitStrategy {
+    /**
+     * Called by the consumer every time it finds the ring empty.
+     * @param step How many times in a row we already waited (0 the first time).
+     * @return The step to pass in next time.
+     */
+    int idle(int step);
+
+    /**
+     * Called by the producer after it added something, to wake a parked consumer.
+     */
+    default void signal() {}
+
+    static WaitStrategy blocking() { return new Blocking(); }
+    static WaitStrategy yielding() { return new Yielding(); }
+    static WaitStrategy busySpin() { return new BusySpin(); }
+
+    /**
+     * Reads a strategy name like "blocking", "yielding" or "spin".
+     * Anything unknown means blocking.
+     */
+    static WaitStrategy parse(String name) {
+        if (name != null) {
+            String n = name.toLowerCase();
+            if (n.startsWith("yield")) return yielding();
+            if (n.contains("spin")) return busySpin();
+        }
+        return blocking();
+    }
+
+    // How many times we spin before yielding or parking
+    int SPIN_STEPS = 100;
+
+    /**
+     * Spins, then parks. The producer only unparks the consumer while it is
+     * really parked, so a busy or spinning consumer costs it nothing extra.
+     */
+    final class Blocking implements WaitStrategy {
+        // Upper bound for one park, in case a wake-up was missed
+        private static final long MAX_PARK_NANOS = 100_000_000L;
+        // The consumer thread. Once set it stays set, so no wake-up is lost later on.
+        private volatile Thread waiter;
+        // True while the consumer parks (or is about to)
+        private volatile boolean parked = false;
+
+        @Override
+        public int idle(int step) {
+            if (step < SPIN_STEPS) {
+                if (parked) parked = false;
+                Thread.onSpinWait();
+            } else if (!parked) {
+                // Announce the park, then let the caller look at the rings once more,
+                // so a frame added just before the flag was set is not missed
+                if (waiter == null) waiter = Thread.currentThread();
+                parked = true;
+            } else {
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+                parked = false;
+            }
+            return step + 1;
+        }
+
+        @Override
+        public void signal() {
+            // The frame must be visible before we read the flag (the ring only uses lazySet)
+            VarHandle.fullFence();
+            if (!parked) return;
+            Thread w = waiter;
+            if (w != null) LockSupport.unpark(w);
+        }
+
+        @Override
+        public String toString() { return "BLOCKING"; }
+    }
+
+    /**
+     * Spins, then yields the CPU on every further wait.
+     */
+    final class Yielding implements WaitStrategy {
+        @Override
+        public int idle(int step) {
+            if (step < SPIN_STEPS) Thread.onSpinWait();
+            else Thread.yield();
+            return step + 1;
+        }
+
+        @Override
+        public String toString() { return "YIELDING"; }
+    }
+
+    /**
+     * Spins forever.
+     */
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public int idle(int step) {
+            Thread.onSpinWait();
+            return step + 1;
+        }
+
+        @Override
+        public String toString() { return "BUSY_SPIN"; }
+    }
+}